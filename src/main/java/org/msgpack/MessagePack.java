@@ -17,17 +17,24 @@
 //
 package org.msgpack;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import org.msgpack.template.Template;
 import org.msgpack.template.TemplateRegistry;
 import org.msgpack.packer.Packer;
+import org.msgpack.io.BufferAllocator;
+import org.msgpack.io.DirectBufferPool;
 import org.msgpack.packer.BufferPacker;
 import org.msgpack.packer.MessagePackPacker;
 import org.msgpack.packer.MessagePackBufferPacker;
+import org.msgpack.packer.MessagePackDirectBufferPacker;
+import org.msgpack.packer.StringCache;
 import org.msgpack.packer.Unconverter;
 import org.msgpack.unpacker.Unpacker;
 import org.msgpack.unpacker.BufferUnpacker;
@@ -52,6 +59,12 @@ import org.msgpack.type.Value;
 public class MessagePack {
     private TemplateRegistry registry;
 
+    private boolean spec2013Enabled = false;
+
+    private BufferAllocator bufferAllocator = BufferAllocator.HEAP;
+
+    private StringCache stringCache;
+
     /**
      * 
      * @since 0.6.0
@@ -67,6 +80,9 @@ public class MessagePack {
      */
     public MessagePack(MessagePack msgpack) {
         registry = new TemplateRegistry(msgpack.registry);
+        spec2013Enabled = msgpack.spec2013Enabled;
+        bufferAllocator = msgpack.bufferAllocator;
+        stringCache = msgpack.stringCache;
     }
 
     protected MessagePack(TemplateRegistry registry) {
@@ -82,6 +98,56 @@ public class MessagePack {
         registry.setClassLoader(cl);
     }
 
+    /**
+     * Enables the formats added to the MessagePack specification in 2013 for
+     * packers created after this call. Strings are written as str 8/16/32
+     * and byte arrays as bin 8/16/32, instead of the raw 16/32 family.
+     * Decoders that implement only the older specification cannot read
+     * them. Unpackers read both formats regardless of this setting.
+     * 
+     * @param enabled
+     *            true to write the formats of the 2013 specification
+     */
+    public void setSpec2013Enabled(boolean enabled) {
+        spec2013Enabled = enabled;
+    }
+
+    public boolean isSpec2013Enabled() {
+        return spec2013Enabled;
+    }
+
+    /**
+     * Sets the allocator that buffer packers created after this call obtain
+     * their chunks from. Chunks are returned to it when a packer is cleared
+     * or closed, so a {@link org.msgpack.io.BufferPool} lets packers that are
+     * created per message run without allocating new chunks.
+     * 
+     * @param allocator
+     *            chunk allocator, or null to allocate from the heap
+     */
+    public void setBufferAllocator(BufferAllocator allocator) {
+        bufferAllocator = allocator == null ? BufferAllocator.HEAP : allocator;
+    }
+
+    public BufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
+    /**
+     * Sets the cache of encoded strings that packers created after this call
+     * look strings up in before encoding them. The cache is off by default.
+     * 
+     * @param cache
+     *            string cache, or null to encode every string
+     */
+    public void setStringCache(StringCache cache) {
+        stringCache = cache;
+    }
+
+    public StringCache getStringCache() {
+        return stringCache;
+    }
+
     /**
      * Returns serializer that enables serializing objects into
      * {@link java.io.OutputStream} object.
@@ -95,6 +161,21 @@ public class MessagePack {
         return new MessagePackPacker(this, out);
     }
 
+    /**
+     * Returns serializer that writes to the channel through a direct buffer.
+     * The serialized data is written when the buffer fills up or when the
+     * serializer is flushed or closed.
+     * 
+     * @param channel
+     *            blocking channel
+     * @return channel-based serializer
+     * @throws java.nio.channels.IllegalBlockingModeException
+     *             if the channel is a non-blocking selectable channel
+     */
+    public Packer createPacker(WritableByteChannel channel) {
+        return new MessagePackPacker(this, channel);
+    }
+
     /**
      * Returns serializer that enables serializing objects into buffer.
      * 
@@ -117,6 +198,29 @@ public class MessagePack {
         return new MessagePackBufferPacker(this, bufferSize);
     }
 
+    /**
+     * Returns serializer that serializes objects into direct buffers taken
+     * from the default {@link org.msgpack.io.DirectBufferPool}. The buffers
+     * are returned to the pool when the serializer is closed.
+     * 
+     * @return buffer-based serializer
+     */
+    public BufferPacker createDirectBufferPacker() {
+        return new MessagePackDirectBufferPacker(this);
+    }
+
+    /**
+     * Returns serializer that serializes objects into direct buffers taken
+     * from the specified pool.
+     * 
+     * @param pool
+     *            pool of direct buffers
+     * @return buffer-based serializer
+     */
+    public BufferPacker createDirectBufferPacker(DirectBufferPool pool) {
+        return new MessagePackDirectBufferPacker(this, pool);
+    }
+
     /**
      * Returns deserializer that enables deserializing
      * {@link java.io.InputStream} object.
@@ -130,6 +234,50 @@ public class MessagePack {
         return new MessagePackUnpacker(this, in);
     }
 
+    /**
+     * Returns deserializer that reads ahead from {@link java.io.InputStream}
+     * into a buffer of the specified size, instead of reading the stream
+     * value by value. It may consume bytes of the stream beyond the last
+     * object it returned, so the stream should not be read from elsewhere.
+     * 
+     * @param in
+     *            input stream
+     * @param bufferSize
+     *            size of the read-ahead buffer
+     * @return stream-based deserializer
+     */
+    public Unpacker createUnpacker(InputStream in, int bufferSize) {
+        return new MessagePackUnpacker(this, in, bufferSize);
+    }
+
+    /**
+     * Returns deserializer that reads ahead from the channel into a direct
+     * buffer. With a non-blocking channel, reads throw
+     * {@link org.msgpack.io.EndOfBufferException} when no data is available
+     * and can be retried once the channel is readable.
+     * 
+     * @param channel
+     *            input channel
+     * @return channel-based deserializer
+     */
+    public Unpacker createUnpacker(ReadableByteChannel channel) {
+        return new MessagePackUnpacker(this, channel);
+    }
+
+    /**
+     * Returns deserializer that reads the file through a memory mapping.
+     * Raw values are referred to in the mapping without being copied onto
+     * the heap first. Closing the deserializer closes the file.
+     * 
+     * @param file
+     *            input file
+     * @return file-based deserializer
+     * @throws IOException
+     */
+    public Unpacker createUnpacker(File file) throws IOException {
+        return new MessagePackUnpacker(this, file);
+    }
+
     /**
      * Returns empty deserializer that enables deserializing buffer.
      * 
@@ -195,7 +343,7 @@ public class MessagePack {
             Template<T> tmpl = registry.lookup(v.getClass());
             tmpl.write(pk, v);
         }
-        return pk.toByteArray();
+        return toByteArray(pk);
     }
 
     /**
@@ -211,7 +359,7 @@ public class MessagePack {
     public <T> byte[] write(T v, Template<T> template) throws IOException {
         BufferPacker pk = createBufferPacker();
         template.write(pk, v);
-        return pk.toByteArray();
+        return toByteArray(pk);
     }
 
     /**
@@ -266,7 +414,13 @@ public class MessagePack {
         // FIXME ValueTemplate should do this
         BufferPacker pk = createBufferPacker();
         pk.write(v);
-        return pk.toByteArray();
+        return toByteArray(pk);
+    }
+
+    private static byte[] toByteArray(BufferPacker pk) throws IOException {
+        byte[] bytes = pk.toByteArray();
+        pk.close(); // returns the chunks to the buffer allocator
+        return bytes;
     }
 
     /**
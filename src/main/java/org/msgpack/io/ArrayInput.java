@@ -0,0 +1,151 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Input} over a region of a single byte array. Scalars are
+ * assembled from the array directly. Like {@link LinkedBufferInput}, it
+ * throws {@link EndOfBufferException} without consuming anything when a
+ * value is incomplete.
+ */
+public class ArrayInput extends AbstractInput {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int nextAdvance;
+
+    public ArrayInput() {
+        this(EMPTY, 0, 0);
+    }
+
+    public ArrayInput(byte[] b, int off, int len) {
+        reset(b, off, len);
+    }
+
+    /**
+     * Makes this input read {@code len} bytes of {@code b} from {@code off},
+     * discarding whatever remained of the previous array.
+     */
+    public void reset(byte[] b, int off, int len) {
+        buffer = b;
+        position = off;
+        limit = off + len;
+        nextAdvance = 0;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getSize() {
+        return limit - position;
+    }
+
+    public int read(byte[] b, int off, int len) throws EOFException {
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        incrReadByteCount(n);
+        return n;
+    }
+
+    public boolean tryRefer(BufferReferer ref, int len) throws IOException {
+        if (position == limit) {
+            throw new EndOfBufferException();
+        } else if (limit - position < len) {
+            return false;
+        }
+        ref.refer(ByteBuffer.wrap(buffer, position, len), true);
+        position += len;
+        incrReadByteCount(len);
+        return true;
+    }
+
+    public byte readByte() throws EOFException {
+        if (position == limit) {
+            throw new EndOfBufferException();
+        }
+        incrReadOneByteCount();
+        return buffer[position++];
+    }
+
+    public void advance() {
+        position += nextAdvance;
+        incrReadByteCount(nextAdvance);
+        nextAdvance = 0;
+    }
+
+    private void require(int n) throws EOFException {
+        if (limit - position < n) {
+            throw new EndOfBufferException();
+        }
+        nextAdvance = n;
+    }
+
+    private int intAt(int i) {
+        return (buffer[i] << 24) | ((buffer[i + 1] & 0xff) << 16)
+                | ((buffer[i + 2] & 0xff) << 8) | (buffer[i + 3] & 0xff);
+    }
+
+    private long longAt(int i) {
+        return ((long) intAt(i) << 32) | (intAt(i + 4) & 0xffffffffL);
+    }
+
+    public byte getByte() throws EOFException {
+        require(1);
+        return buffer[position];
+    }
+
+    public short getShort() throws EOFException {
+        require(2);
+        return (short) ((buffer[position] << 8) | (buffer[position + 1] & 0xff));
+    }
+
+    public int getInt() throws EOFException {
+        require(4);
+        return intAt(position);
+    }
+
+    public long getLong() throws EOFException {
+        require(8);
+        return longAt(position);
+    }
+
+    public float getFloat() throws EOFException {
+        require(4);
+        return Float.intBitsToFloat(intAt(position));
+    }
+
+    public double getDouble() throws EOFException {
+        require(8);
+        return Double.longBitsToDouble(longAt(position));
+    }
+
+    public void close() {
+    }
+}
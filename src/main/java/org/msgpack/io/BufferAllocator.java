@@ -0,0 +1,50 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+/**
+ * Supplies the chunks a {@link BufferedOutput} writes into, and takes them
+ * back once the output no longer references them.
+ */
+public interface BufferAllocator {
+    /**
+     * Allocates fresh chunks and lets released ones be garbage-collected.
+     */
+    public static final BufferAllocator HEAP = new BufferAllocator() {
+        @Override
+        public byte[] allocate(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] buffer) {
+        }
+    };
+
+    /**
+     * Returns a chunk of at least {@code size} bytes. Its contents are
+     * unspecified.
+     */
+    public byte[] allocate(int size);
+
+    /**
+     * Returns a chunk obtained from {@link #allocate(int)}. The caller must
+     * not touch it afterwards.
+     */
+    public void release(byte[] buffer);
+}
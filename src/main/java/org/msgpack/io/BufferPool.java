@@ -0,0 +1,72 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+/**
+ * {@link BufferAllocator} that recycles chunks of a single size. Released
+ * chunks are kept in a few stripes chosen by thread id, so that threads
+ * which pack concurrently rarely contend on the same lock. Requests for
+ * other sizes are served from the heap and are not retained on release.
+ */
+public final class BufferPool implements BufferAllocator {
+    static final int DEFAULT_MAX_POOLED_PER_STRIPE = 16;
+
+    private final int chunkSize;
+    private final StripedPool<byte[]> pool;
+
+    public BufferPool(int chunkSize) {
+        this(chunkSize, DEFAULT_MAX_POOLED_PER_STRIPE);
+    }
+
+    public BufferPool(int chunkSize, int maxPooledPerStripe) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.pool = new StripedPool<byte[]>(maxPooledPerStripe);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks currently held by this pool.
+     */
+    public int getPooledCount() {
+        return pool.size();
+    }
+
+    @Override
+    public byte[] allocate(int size) {
+        if (size == chunkSize) {
+            byte[] buffer = pool.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    @Override
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == chunkSize) {
+            pool.offer(buffer);
+        }
+    }
+}
@@ -25,16 +25,25 @@ abstract class BufferedOutput implements Output {
     protected int filled;
     protected final int bufferSize;
     protected ByteBuffer castByteBuffer;
+    protected final BufferAllocator allocator;
 
     public BufferedOutput(int bufferSize) {
+        this(bufferSize, BufferAllocator.HEAP);
+    }
+
+    public BufferedOutput(int bufferSize, BufferAllocator allocator) {
         if (bufferSize < 9) {
             bufferSize = 9;
         }
+        if (allocator == null) {
+            allocator = BufferAllocator.HEAP;
+        }
         this.bufferSize = bufferSize;
+        this.allocator = allocator;
     }
 
     private void allocateNewBuffer() {
-        buffer = new byte[bufferSize];
+        buffer = allocator.allocate(bufferSize);
         castByteBuffer = ByteBuffer.wrap(buffer);
     }
 
@@ -45,8 +54,7 @@ abstract class BufferedOutput implements Output {
         }
         if (bufferSize - filled < len) {
             if (!flushBuffer(buffer, 0, filled)) {
-                buffer = new byte[bufferSize];
-                castByteBuffer = ByteBuffer.wrap(buffer);
+                allocateNewBuffer();
             }
             filled = 0;
         }
@@ -103,6 +111,92 @@ abstract class BufferedOutput implements Output {
         }
     }
 
+    /**
+     * Writes like {@link #write(byte[], int, int)}, but always copies the
+     * bytes instead of keeping a reference to b, so b can be reused as soon
+     * as this returns.
+     */
+    public void writeCopy(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, bufferSize);
+            write(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Encodes s in UTF-8 straight into the buffer. The length header is the
+     * caller's business; see {@link UTF8#encodedLength(String)}.
+     */
+    public void writeUTF8(String s) throws IOException {
+        final int len = s.length();
+        int off = 0;
+        while (off < len) {
+            reserve(6);
+            int end = UTF8.chunkEnd(s, off, bufferSize - filled);
+            filled = UTF8.encode(s, off, end, buffer, filled);
+            off = end;
+        }
+    }
+
+    /**
+     * Encodes a[off, off + len) as MessagePack numbers straight into the
+     * buffer; see {@link PrimitiveEncoder}. Room is made once per run of
+     * elements that fits in the buffer at the worst-case size.
+     */
+    public void writeIntArray(int[] a, int off, int len) throws IOException {
+        final int end = off + len;
+        while (off < end) {
+            reserve(PrimitiveEncoder.MAX_INT_SIZE);
+            int runEnd = Math.min(end, off + (bufferSize - filled) / PrimitiveEncoder.MAX_INT_SIZE);
+            int p = filled;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putInt(buffer, p, a[off]);
+            }
+            filled = p;
+        }
+    }
+
+    public void writeLongArray(long[] a, int off, int len) throws IOException {
+        final int end = off + len;
+        while (off < end) {
+            reserve(PrimitiveEncoder.MAX_LONG_SIZE);
+            int runEnd = Math.min(end, off + (bufferSize - filled) / PrimitiveEncoder.MAX_LONG_SIZE);
+            int p = filled;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putLong(buffer, p, a[off]);
+            }
+            filled = p;
+        }
+    }
+
+    public void writeFloatArray(float[] a, int off, int len) throws IOException {
+        final int end = off + len;
+        while (off < end) {
+            reserve(PrimitiveEncoder.FLOAT_SIZE);
+            int runEnd = Math.min(end, off + (bufferSize - filled) / PrimitiveEncoder.FLOAT_SIZE);
+            int p = filled;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putFloat(buffer, p, a[off]);
+            }
+            filled = p;
+        }
+    }
+
+    public void writeDoubleArray(double[] a, int off, int len) throws IOException {
+        final int end = off + len;
+        while (off < end) {
+            reserve(PrimitiveEncoder.DOUBLE_SIZE);
+            int runEnd = Math.min(end, off + (bufferSize - filled) / PrimitiveEncoder.DOUBLE_SIZE);
+            int p = filled;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putDouble(buffer, p, a[off]);
+            }
+            filled = p;
+        }
+    }
+
     @Override
     public void writeByte(byte v) throws IOException {
         reserve(1);
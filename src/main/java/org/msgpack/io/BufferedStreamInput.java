@@ -0,0 +1,167 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Input} that reads ahead from the stream into an internal buffer,
+ * so that headers and scalars are decoded from memory instead of issuing a
+ * read per value. Raw bodies that fit in the buffer are referred to in
+ * place.
+ * <p>
+ * Unlike {@link StreamInput}, this may consume bytes past the end of the
+ * last value read from the stream.
+ */
+public class BufferedStreamInput extends AbstractInput {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+
+    private final byte[] buffer;
+    private final ByteBuffer castByteBuffer;
+    private int position;
+    private int limit;
+    private int nextAdvance;
+
+    public BufferedStreamInput(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedStreamInput(InputStream in, int bufferSize) {
+        if (bufferSize < 8) {
+            bufferSize = 8;
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.castByteBuffer = ByteBuffer.wrap(buffer);
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    private void fill(int len) throws IOException {
+        if (limit - position >= len) {
+            return;
+        }
+        if (buffer.length - position < len) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit - position < len) {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            limit += n;
+        }
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int remain = len;
+        int n = Math.min(remain, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        incrReadByteCount(n);
+        remain -= n;
+        off += n;
+        if (remain >= buffer.length) {
+            // large bodies bypass the buffer
+            while (remain > 0) {
+                n = in.read(b, off, remain);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                incrReadByteCount(n);
+                remain -= n;
+                off += n;
+            }
+        } else if (remain > 0) {
+            fill(remain);
+            System.arraycopy(buffer, position, b, off, remain);
+            position += remain;
+            incrReadByteCount(remain);
+        }
+        return len;
+    }
+
+    public boolean tryRefer(BufferReferer ref, int len) throws IOException {
+        if (len > buffer.length) {
+            return false;
+        }
+        fill(len);
+        ref.refer(ByteBuffer.wrap(buffer, position, len), false);
+        position += len;
+        incrReadByteCount(len);
+        return true;
+    }
+
+    public byte readByte() throws IOException {
+        fill(1);
+        incrReadOneByteCount();
+        return buffer[position++];
+    }
+
+    public void advance() {
+        position += nextAdvance;
+        incrReadByteCount(nextAdvance);
+        nextAdvance = 0;
+    }
+
+    private void require(int len) throws IOException {
+        fill(len);
+        nextAdvance = len;
+    }
+
+    public byte getByte() throws IOException {
+        require(1);
+        return buffer[position];
+    }
+
+    public short getShort() throws IOException {
+        require(2);
+        return castByteBuffer.getShort(position);
+    }
+
+    public int getInt() throws IOException {
+        require(4);
+        return castByteBuffer.getInt(position);
+    }
+
+    public long getLong() throws IOException {
+        require(8);
+        return castByteBuffer.getLong(position);
+    }
+
+    public float getFloat() throws IOException {
+        require(4);
+        return castByteBuffer.getFloat(position);
+    }
+
+    public double getDouble() throws IOException {
+        require(8);
+        return castByteBuffer.getDouble(position);
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,168 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * {@link Input} that reads ahead from a channel into a reusable direct
+ * buffer. Raw bodies that fit in the buffer are referred to in place.
+ * <p>
+ * If the channel is non-blocking and has no data available, an
+ * {@link EndOfBufferException} is thrown without losing what has been
+ * read so far, and decoding can be resumed once the channel is readable.
+ */
+public class ChannelInput extends AbstractInput {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final ReadableByteChannel channel;
+
+    // read mode: position is the next byte, limit the end of the data
+    private final ByteBuffer buffer;
+    private int nextAdvance;
+
+    public ChannelInput(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelInput(ReadableByteChannel channel, int bufferSize) {
+        if (bufferSize < 8) {
+            bufferSize = 8;
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.limit(0);
+    }
+
+    private void fill(int len) throws IOException {
+        if (buffer.remaining() >= len) {
+            return;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < len) {
+                int n = channel.read(buffer);
+                if (n < 0) {
+                    throw new EOFException();
+                } else if (n == 0) {
+                    throw new EndOfBufferException();
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        incrReadByteCount(n);
+        int remain = len - n;
+        off += n;
+        if (remain >= buffer.capacity()) {
+            // large bodies bypass the buffer
+            ByteBuffer bb = ByteBuffer.wrap(b, off, remain);
+            while (bb.hasRemaining()) {
+                n = channel.read(bb);
+                if (n < 0) {
+                    throw new EOFException();
+                } else if (n == 0) {
+                    break;
+                }
+                incrReadByteCount(n);
+            }
+            return len - bb.remaining();
+        } else if (remain > 0) {
+            try {
+                fill(remain);
+            } catch (EndOfBufferException e) {
+                return len - remain;
+            }
+            buffer.get(b, off, remain);
+            incrReadByteCount(remain);
+        }
+        return len;
+    }
+
+    public boolean tryRefer(BufferReferer ref, int len) throws IOException {
+        if (len > buffer.capacity()) {
+            return false;
+        }
+        fill(len);
+        ByteBuffer bb = buffer.slice();
+        bb.limit(len);
+        ref.refer(bb, false);
+        buffer.position(buffer.position() + len);
+        incrReadByteCount(len);
+        return true;
+    }
+
+    public byte readByte() throws IOException {
+        fill(1);
+        incrReadOneByteCount();
+        return buffer.get();
+    }
+
+    public void advance() {
+        buffer.position(buffer.position() + nextAdvance);
+        incrReadByteCount(nextAdvance);
+        nextAdvance = 0;
+    }
+
+    private void require(int len) throws IOException {
+        fill(len);
+        nextAdvance = len;
+    }
+
+    public byte getByte() throws IOException {
+        require(1);
+        return buffer.get(buffer.position());
+    }
+
+    public short getShort() throws IOException {
+        require(2);
+        return buffer.getShort(buffer.position());
+    }
+
+    public int getInt() throws IOException {
+        require(4);
+        return buffer.getInt(buffer.position());
+    }
+
+    public long getLong() throws IOException {
+        require(8);
+        return buffer.getLong(buffer.position());
+    }
+
+    public float getFloat() throws IOException {
+        require(4);
+        return buffer.getFloat(buffer.position());
+    }
+
+    public double getDouble() throws IOException {
+        require(8);
+        return buffer.getDouble(buffer.position());
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
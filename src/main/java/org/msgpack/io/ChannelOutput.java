@@ -0,0 +1,250 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link Output} that collects small writes in a reusable direct buffer
+ * and writes it to the channel when it fills up or on {@link #flush()}.
+ * The channel must be in blocking mode; a non-blocking
+ * {@link SelectableChannel} is rejected with
+ * {@link IllegalBlockingModeException} by the constructor.
+ */
+public class ChannelOutput implements Output {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public ChannelOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelOutput(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < 9) {
+            bufferSize = 9;
+        }
+        checkBlocking(channel);
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // the write loops below would spin on a channel that accepts nothing
+    private static void checkBlocking(WritableByteChannel channel) {
+        if (channel instanceof SelectableChannel
+                && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of all buffers with gathering writes,
+     * repeating them until the channel has accepted everything.
+     * 
+     * @throws IllegalBlockingModeException
+     *             if the channel is a {@link SelectableChannel} in
+     *             non-blocking mode
+     */
+    static long writeFully(GatheringByteChannel channel, ByteBuffer[] buffers)
+            throws IOException {
+        checkBlocking(channel);
+        long written = 0;
+        int offset = 0;
+        while (true) {
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+            if (offset == buffers.length) {
+                return written;
+            }
+            written += channel.write(buffers, offset, buffers.length - offset);
+        }
+    }
+
+    private void reserve(int len) throws IOException {
+        if (buffer.remaining() < len) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            channel.write(bb);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= buffer.remaining()) {
+            buffer.put(b, off, len);
+            return;
+        }
+        flushBuffer();
+        if (len <= buffer.remaining()) {
+            buffer.put(b, off, len);
+        } else {
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer bb) throws IOException {
+        if (bb.remaining() <= buffer.remaining()) {
+            buffer.put(bb);
+            return;
+        }
+        flushBuffer();
+        if (bb.remaining() <= buffer.remaining()) {
+            buffer.put(bb);
+        } else {
+            writeFully(bb);
+        }
+    }
+
+    @Override
+    public void writeByte(byte v) throws IOException {
+        reserve(1);
+        buffer.put(v);
+    }
+
+    @Override
+    public void writeShort(short v) throws IOException {
+        reserve(2);
+        buffer.putShort(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        reserve(4);
+        buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        reserve(8);
+        buffer.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        reserve(4);
+        buffer.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        reserve(8);
+        buffer.putDouble(v);
+    }
+
+    @Override
+    public void writeByteAndByte(byte b, byte v) throws IOException {
+        reserve(2);
+        buffer.put(b);
+        buffer.put(v);
+    }
+
+    @Override
+    public void writeByteAndShort(byte b, short v) throws IOException {
+        reserve(3);
+        buffer.put(b);
+        buffer.putShort(v);
+    }
+
+    @Override
+    public void writeByteAndInt(byte b, int v) throws IOException {
+        reserve(5);
+        buffer.put(b);
+        buffer.putInt(v);
+    }
+
+    @Override
+    public void writeByteAndLong(byte b, long v) throws IOException {
+        reserve(9);
+        buffer.put(b);
+        buffer.putLong(v);
+    }
+
+    @Override
+    public void writeByteAndFloat(byte b, float v) throws IOException {
+        reserve(5);
+        buffer.put(b);
+        buffer.putFloat(v);
+    }
+
+    @Override
+    public void writeByteAndDouble(byte b, double v) throws IOException {
+        reserve(9);
+        buffer.put(b);
+        buffer.putDouble(v);
+    }
+
+    /**
+     * Flushes the buffer and writes {@code count} bytes of the file from
+     * {@code position} to the channel with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     */
+    public void transferFrom(FileChannel src, long position, long count)
+            throws IOException {
+        flush();
+        while (count > 0) {
+            long n = src.transferTo(position, count, channel);
+            if (n <= 0) {
+                if (position >= src.size()) {
+                    throw new EOFException();
+                }
+                continue;
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer.position() > 0) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
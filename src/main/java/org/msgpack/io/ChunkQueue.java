@@ -0,0 +1,147 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Array-based ring of the chunks held by {@link LinkedBufferInput}. Each
+ * chunk records whether it was allocated by the input, and so may be
+ * reused, or was fed by reference.
+ */
+final class ChunkQueue implements Iterable<ByteBuffer> {
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private boolean[] owned = new boolean[8];
+    private int head;
+    private int count;
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    ByteBuffer peekFirst() {
+        return count == 0 ? null : chunks[head];
+    }
+
+    ByteBuffer peekLast() {
+        return count == 0 ? null : chunks[index(count - 1)];
+    }
+
+    boolean isFirstOwned() {
+        return count != 0 && owned[head];
+    }
+
+    void addLast(ByteBuffer bb, boolean own) {
+        if (count == chunks.length) {
+            grow();
+        }
+        int i = index(count);
+        chunks[i] = bb;
+        owned[i] = own;
+        count++;
+    }
+
+    /**
+     * Inserts the chunk in front of the last one.
+     */
+    void addBeforeLast(ByteBuffer bb, boolean own) {
+        int last = index(count - 1);
+        ByteBuffer lastChunk = chunks[last];
+        boolean lastOwned = owned[last];
+        chunks[last] = bb;
+        owned[last] = own;
+        addLast(lastChunk, lastOwned);
+    }
+
+    ByteBuffer removeFirst() {
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
+        ByteBuffer bb = chunks[head];
+        chunks[head] = null;
+        head = index(1);
+        count--;
+        return bb;
+    }
+
+    ByteBuffer removeLast() {
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
+        int i = index(count - 1);
+        ByteBuffer bb = chunks[i];
+        chunks[i] = null;
+        count--;
+        return bb;
+    }
+
+    void clear() {
+        while (count > 0) {
+            removeLast();
+        }
+        head = 0;
+    }
+
+    private int index(int n) {
+        return (head + n) & (chunks.length - 1);
+    }
+
+    private void grow() {
+        int n = chunks.length;
+        ByteBuffer[] newChunks = new ByteBuffer[n * 2];
+        boolean[] newOwned = new boolean[n * 2];
+        for (int i = 0; i < count; i++) {
+            newChunks[i] = chunks[index(i)];
+            newOwned[i] = owned[index(i)];
+        }
+        chunks = newChunks;
+        owned = newOwned;
+        head = 0;
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                return chunks[index(i++)];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
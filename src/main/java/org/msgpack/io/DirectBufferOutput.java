@@ -0,0 +1,254 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Output} that encodes into direct {@link ByteBuffer} chunks taken
+ * from a {@link DirectBufferPool}. More chunks are taken as the output
+ * grows, and all of them are returned to the pool by {@link #clear()} and
+ * {@link #close()}. The written data can be handed to NIO as direct
+ * buffers without copying it from the heap.
+ */
+public class DirectBufferOutput implements Output {
+    private final DirectBufferPool pool;
+
+    // filled chunks in write mode, followed by the current one
+    private final List<ByteBuffer> chunks;
+    private ByteBuffer current;
+    private int size;
+
+    public DirectBufferOutput() {
+        this(DirectBufferPool.getDefault());
+    }
+
+    public DirectBufferOutput(DirectBufferPool pool) {
+        this.pool = pool;
+        this.chunks = new ArrayList<ByteBuffer>();
+    }
+
+    private void nextChunk() {
+        if (current != null) {
+            size += current.position();
+        }
+        current = pool.allocate();
+        chunks.add(current);
+    }
+
+    private void reserve(int len) {
+        if (current == null || current.remaining() < len) {
+            nextChunk();
+        }
+    }
+
+    public int getSize() {
+        return current == null ? size : size + current.position();
+    }
+
+    /**
+     * Returns read-only views of the written data, one per chunk. They are
+     * valid until this output is cleared or closed.
+     */
+    public ByteBuffer[] toByteBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer bb = chunks.get(i).duplicate();
+            bb.flip();
+            buffers[i] = bb.asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[getSize()];
+        int off = 0;
+        for (ByteBuffer bb : toByteBuffers()) {
+            int len = bb.remaining();
+            bb.get(bytes, off, len);
+            off += len;
+        }
+        return bytes;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] tmp = null;
+        for (ByteBuffer bb : toByteBuffers()) {
+            if (tmp == null) {
+                tmp = new byte[Math.min(pool.getChunkSize(), getSize())];
+            }
+            while (bb.hasRemaining()) {
+                int len = Math.min(tmp.length, bb.remaining());
+                bb.get(tmp, 0, len);
+                out.write(tmp, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Writes all chunks with gathering writes, repeating them until every
+     * byte has been accepted by the channel. Non-blocking channels are
+     * rejected with {@link java.nio.channels.IllegalBlockingModeException}.
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        return ChannelOutput.writeFully(channel, toByteBuffers());
+    }
+
+    /**
+     * Discards the written data, returning all chunks but the first one to
+     * the pool.
+     */
+    public void clear() {
+        for (int i = 1; i < chunks.size(); i++) {
+            pool.release(chunks.get(i));
+        }
+        if (chunks.isEmpty()) {
+            current = null;
+        } else {
+            current = chunks.get(0);
+            current.clear();
+            chunks.clear();
+            chunks.add(current);
+        }
+        size = 0;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            if (current == null || !current.hasRemaining()) {
+                nextChunk();
+            }
+            int n = Math.min(bb.remaining(), current.remaining());
+            ByteBuffer src = bb.duplicate();
+            src.limit(src.position() + n);
+            current.put(src);
+            bb.position(bb.position() + n);
+        }
+    }
+
+    @Override
+    public void writeByte(byte v) throws IOException {
+        reserve(1);
+        current.put(v);
+    }
+
+    @Override
+    public void writeShort(short v) throws IOException {
+        reserve(2);
+        current.putShort(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        reserve(4);
+        current.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        reserve(8);
+        current.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        reserve(4);
+        current.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        reserve(8);
+        current.putDouble(v);
+    }
+
+    @Override
+    public void writeByteAndByte(byte b, byte v) throws IOException {
+        reserve(2);
+        current.put(b);
+        current.put(v);
+    }
+
+    @Override
+    public void writeByteAndShort(byte b, short v) throws IOException {
+        reserve(3);
+        current.put(b);
+        current.putShort(v);
+    }
+
+    @Override
+    public void writeByteAndInt(byte b, int v) throws IOException {
+        reserve(5);
+        current.put(b);
+        current.putInt(v);
+    }
+
+    @Override
+    public void writeByteAndLong(byte b, long v) throws IOException {
+        reserve(9);
+        current.put(b);
+        current.putLong(v);
+    }
+
+    @Override
+    public void writeByteAndFloat(byte b, float v) throws IOException {
+        reserve(5);
+        current.put(b);
+        current.putFloat(v);
+    }
+
+    @Override
+    public void writeByteAndDouble(byte b, double v) throws IOException {
+        reserve(9);
+        current.put(b);
+        current.putDouble(v);
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuffer bb : chunks) {
+            pool.release(bb);
+        }
+        chunks.clear();
+        current = null;
+        size = 0;
+    }
+}
@@ -0,0 +1,89 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of direct {@link ByteBuffer} chunks of a single size, used by
+ * {@link DirectBufferOutput}. Allocating direct memory is much more
+ * expensive than allocating heap arrays, so released chunks are kept in
+ * per-thread stripes like {@link BufferPool} does.
+ */
+public final class DirectBufferPool {
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    private static final DirectBufferPool DEFAULT_POOL = new DirectBufferPool(
+            DEFAULT_CHUNK_SIZE);
+
+    /**
+     * Returns the pool shared by direct buffer packers that are not given
+     * one explicitly.
+     */
+    public static DirectBufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    private final int chunkSize;
+    private final StripedPool<ByteBuffer> pool;
+
+    public DirectBufferPool(int chunkSize) {
+        this(chunkSize, BufferPool.DEFAULT_MAX_POOLED_PER_STRIPE);
+    }
+
+    public DirectBufferPool(int chunkSize, int maxPooledPerStripe) {
+        if (chunkSize < 9) {
+            throw new IllegalArgumentException("chunkSize must be at least 9: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.pool = new StripedPool<ByteBuffer>(maxPooledPerStripe);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks currently held by this pool.
+     */
+    public int getPooledCount() {
+        return pool.size();
+    }
+
+    /**
+     * Returns an empty direct chunk of {@link #getChunkSize()} bytes.
+     */
+    public ByteBuffer allocate() {
+        ByteBuffer bb = pool.poll();
+        if (bb == null) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        bb.clear();
+        return bb;
+    }
+
+    /**
+     * Returns a chunk obtained from {@link #allocate()}. The caller must not
+     * touch it, or any view of it, afterwards.
+     */
+    public void release(ByteBuffer bb) {
+        if (bb != null && bb.isDirect() && bb.capacity() == chunkSize) {
+            pool.offer(bb);
+        }
+    }
+}
@@ -28,4 +28,13 @@ public class EndOfBufferException extends EOFException {
     public EndOfBufferException(String s) {
         super(s);
     }
+
+    /**
+     * Buffer inputs throw this routinely when a value is incomplete, so no
+     * stack trace is recorded.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
 }
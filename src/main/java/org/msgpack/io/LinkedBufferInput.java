@@ -19,13 +19,12 @@ package org.msgpack.io;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.util.LinkedList;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.nio.ByteBuffer;
 
 public class LinkedBufferInput extends AbstractInput {
-    LinkedList<ByteBuffer> link;
+    private static final int MAX_SPARE_CHUNKS = 4;
+
+    ChunkQueue link;
 
     int writable;
 
@@ -37,12 +36,63 @@ public class LinkedBufferInput extends AbstractInput {
 
     private final int bufferSize;
 
+    // consumed chunks kept for reuse by feed
+    private final ByteBuffer[] spareChunks;
+    private int spareCount;
+
+    private int size;
+
+    private WaterMarkListener waterMarkListener;
+    private int highWaterMark;
+    private int lowWaterMark;
+    private boolean aboveHighWaterMark;
+
     public LinkedBufferInput(int bufferSize) {
-        this.link = new LinkedList<ByteBuffer>();
+        this.link = new ChunkQueue();
         this.writable = -1;
         this.tmpBuffer = new byte[8];
         this.tmpByteBuffer = ByteBuffer.wrap(tmpBuffer);
         this.bufferSize = bufferSize;
+        this.spareChunks = new ByteBuffer[MAX_SPARE_CHUNKS];
+    }
+
+    /**
+     * Notifies the listener when the buffered size reaches
+     * {@code highWaterMark} bytes, and again when it has been consumed down
+     * to {@code lowWaterMark} bytes.
+     * 
+     * @param listener
+     *            listener to notify, or null to stop notifying
+     */
+    public void setWaterMarks(int highWaterMark, int lowWaterMark,
+            WaterMarkListener listener) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException(
+                    "lowWaterMark must not exceed highWaterMark");
+        }
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.waterMarkListener = listener;
+        this.aboveHighWaterMark = false;
+        fed(0);
+    }
+
+    private void fed(int len) {
+        size += len;
+        if (!aboveHighWaterMark && waterMarkListener != null
+                && size >= highWaterMark) {
+            aboveHighWaterMark = true;
+            waterMarkListener.onHighWaterMark(this);
+        }
+    }
+
+    private void consumed(int len) {
+        incrReadByteCount(len);
+        size -= len;
+        if (aboveHighWaterMark && size <= lowWaterMark) {
+            aboveHighWaterMark = false;
+            waterMarkListener.onLowWaterMark(this);
+        }
     }
 
     public int read(byte[] b, int off, int len) throws EOFException {
@@ -51,15 +101,15 @@ public class LinkedBufferInput extends AbstractInput {
         }
         int olen = len;
         while (true) {
-            ByteBuffer bb = link.getFirst();
+            ByteBuffer bb = link.peekFirst();
             if (len < bb.remaining()) {
                 bb.get(b, off, len);
-                incrReadByteCount(len);
+                consumed(len);
                 return olen;
             }
             int rem = bb.remaining();
             bb.get(b, off, rem);
-            incrReadByteCount(rem);
+            consumed(rem);
             len -= rem;
             off += rem;
             if (!removeFirstLink(bb)) {
@@ -70,10 +120,7 @@ public class LinkedBufferInput extends AbstractInput {
     }
 
     public boolean tryRefer(BufferReferer ref, int len) throws IOException {
-        ByteBuffer bb = null;
-        try {
-            bb = link.getFirst();
-        } catch(NoSuchElementException e) {}
+        ByteBuffer bb = link.peekFirst();
         if (bb == null) {
             throw new EndOfBufferException();
         } else if (bb.remaining() < len) {
@@ -84,8 +131,8 @@ public class LinkedBufferInput extends AbstractInput {
         int lim = bb.limit();
         try {
             bb.limit(pos + len);
-            ref.refer(bb, true);
-            incrReadByteCount(len);
+            // chunks allocated here are reused, so they can not be given away
+            ref.refer(bb, !link.isFirstOwned());
             success = true;
         } finally {
             bb.limit(lim);
@@ -98,19 +145,17 @@ public class LinkedBufferInput extends AbstractInput {
                 removeFirstLink(bb);
             }
         }
+        consumed(len);
         return true;
     }
 
     public byte readByte() throws EOFException {
-        ByteBuffer bb = null;
-        try {
-            bb = link.getFirst();
-        } catch(NoSuchElementException e) {}
+        ByteBuffer bb = link.peekFirst();
         if (bb == null || bb.remaining() == 0) {
             throw new EndOfBufferException();
         }
         byte result = bb.get();
-        incrReadOneByteCount();
+        consumed(1);
         if (bb.remaining() == 0) {
             removeFirstLink(bb);
         }
@@ -122,21 +167,27 @@ public class LinkedBufferInput extends AbstractInput {
             return;
         }
         int len = nextAdvance;
-        ByteBuffer bb;
-        while (true) {
-            bb = link.getFirst();
-            if (len < bb.remaining()) {
-                bb.position(bb.position() + len);
-                break;
-            }
-            len -= bb.remaining();
-            bb.position(bb.position() + bb.remaining());
-            if (!removeFirstLink(bb)) {
-                break;
+        ByteBuffer bb = link.peekFirst();
+        if (len < bb.remaining()) {
+            // fast path: the value was read from the head chunk
+            bb.position(bb.position() + len);
+        } else {
+            while (true) {
+                if (len < bb.remaining()) {
+                    bb.position(bb.position() + len);
+                    break;
+                }
+                len -= bb.remaining();
+                bb.position(bb.position() + bb.remaining());
+                if (!removeFirstLink(bb)) {
+                    break;
+                }
+                bb = link.peekFirst();
             }
         }
-        incrReadByteCount(nextAdvance);
+        int advanced = nextAdvance;
         nextAdvance = 0;
+        consumed(advanced);
     }
 
     private boolean removeFirstLink(ByteBuffer first) {
@@ -151,11 +202,31 @@ public class LinkedBufferInput extends AbstractInput {
                 return false;
             }
         } else {
+            boolean owned = link.isFirstOwned();
             link.removeFirst();
+            if (owned) {
+                recycleChunk(first);
+            }
             return true;
         }
     }
 
+    private void recycleChunk(ByteBuffer bb) {
+        if (bb.capacity() == bufferSize && spareCount < spareChunks.length) {
+            spareChunks[spareCount++] = bb;
+        }
+    }
+
+    private ByteBuffer allocateChunk(int sz) {
+        if (sz == bufferSize && spareCount > 0) {
+            ByteBuffer bb = spareChunks[--spareCount];
+            spareChunks[spareCount] = null;
+            bb.clear();
+            return bb;
+        }
+        return ByteBuffer.allocate(sz);
+    }
+
     private void requireMore(int n) throws EOFException {
         int off = 0;
         for (ByteBuffer bb : link) {
@@ -176,10 +247,7 @@ public class LinkedBufferInput extends AbstractInput {
     }
 
     private ByteBuffer require(int n) throws EOFException {
-        ByteBuffer bb = null;
-        try {
-            bb = link.getFirst();
-        } catch(NoSuchElementException e) {}
+        ByteBuffer bb = link.peekFirst();
         if (bb == null) {
             throw new EndOfBufferException();
         }
@@ -237,19 +305,20 @@ public class LinkedBufferInput extends AbstractInput {
 
     public void feed(byte[] b, int off, int len, boolean reference) {
         if (reference) {
-            if (writable > 0 && link.getLast().remaining() == 0) {
-                link.add(link.size()-1, ByteBuffer.wrap(b, off, len));
+            if (writable > 0 && link.peekLast().remaining() == 0) {
+                link.addBeforeLast(ByteBuffer.wrap(b, off, len), false);
+                fed(len);
                 return;
             }
-            link.addLast(ByteBuffer.wrap(b, off, len));
+            link.addLast(ByteBuffer.wrap(b, off, len), false);
             writable = -1;
+            fed(len);
             return;
         }
 
-        ByteBuffer bb = null;
-        try {
-            bb = link.getLast();
-        } catch(NoSuchElementException e) {}
+        fed(len);
+
+        ByteBuffer bb = link.peekLast();
         if (len <= writable) {
             int pos = bb.position();
             bb.position(bb.limit());
@@ -272,11 +341,11 @@ public class LinkedBufferInput extends AbstractInput {
         }
 
         int sz = Math.max(len, bufferSize);
-        ByteBuffer nb = ByteBuffer.allocate(sz);
+        ByteBuffer nb = allocateChunk(sz);
         nb.put(b, off, len);
         nb.limit(len);
         nb.position(0);
-        link.addLast(nb);
+        link.addLast(nb, true);
         writable = sz - len;
     }
 
@@ -286,21 +355,22 @@ public class LinkedBufferInput extends AbstractInput {
 
     public void feed(ByteBuffer buf, boolean reference) {
         if (reference) {
-            if (writable > 0 && link.getLast().remaining() == 0) {
-                link.add(link.size()-1, buf);
+            int rem = buf.remaining();
+            if (writable > 0 && link.peekLast().remaining() == 0) {
+                link.addBeforeLast(buf, false);
+                fed(rem);
                 return;
             }
-            link.addLast(buf);
+            link.addLast(buf, false);
             writable = -1;
+            fed(rem);
             return;
         }
 
         int rem = buf.remaining();
+        fed(rem);
 
-        ByteBuffer bb = null;
-        try {
-            bb = link.getLast();
-        } catch(NoSuchElementException e) {}
+        ByteBuffer bb = link.peekLast();
         if (rem <= writable) {
             int pos = bb.position();
             bb.position(bb.limit());
@@ -324,26 +394,41 @@ public class LinkedBufferInput extends AbstractInput {
         }
 
         int sz = Math.max(rem, bufferSize);
-        ByteBuffer nb = ByteBuffer.allocate(sz);
+        ByteBuffer nb = allocateChunk(sz);
         nb.put(buf);
         nb.limit(rem);
         nb.position(0);
-        link.addLast(nb);
+        link.addLast(nb, true);
         writable = sz - rem;
     }
 
     public void clear() {
         if (writable >= 0) {
-            ByteBuffer bb = link.getLast();
-            link.clear();
+            ByteBuffer bb = link.removeLast();
+            removeAllLinks();
             bb.position(0);
             bb.limit(0);
-            link.addLast(bb);
+            link.addLast(bb, true);
             writable = bb.capacity();
         } else {
-            link.clear();
+            removeAllLinks();
             writable = -1;
         }
+        size = 0;
+        if (aboveHighWaterMark) {
+            aboveHighWaterMark = false;
+            waterMarkListener.onLowWaterMark(this);
+        }
+    }
+
+    private void removeAllLinks() {
+        while (!link.isEmpty()) {
+            boolean owned = link.isFirstOwned();
+            ByteBuffer bb = link.removeFirst();
+            if (owned) {
+                recycleChunk(bb);
+            }
+        }
     }
 
     public void copyReferencedBuffer() {
@@ -351,17 +436,17 @@ public class LinkedBufferInput extends AbstractInput {
             return;
         }
 
-        int size = 0;
+        int total = 0;
         for(ByteBuffer bb : link) {
-            size += bb.remaining();
+            total += bb.remaining();
         }
-        if (size == 0) {
+        if (total == 0) {
             return;
         }
 
         if (writable >= 0) {
             ByteBuffer last = link.removeLast();
-            byte[] copy = new byte[size - last.remaining()];
+            byte[] copy = new byte[total - last.remaining()];
             int off = 0;
             for(ByteBuffer bb : link) {
                 int len = bb.remaining();
@@ -369,11 +454,11 @@ public class LinkedBufferInput extends AbstractInput {
                 off += len;
             }
             link.clear();
-            link.add(ByteBuffer.wrap(copy));
-            link.add(last);
+            link.addLast(ByteBuffer.wrap(copy), true);
+            link.addLast(last, true);
 
         } else {
-            byte[] copy = new byte[size];
+            byte[] copy = new byte[total];
             int off = 0;
             for(ByteBuffer bb : link) {
                 int len = bb.remaining();
@@ -381,16 +466,12 @@ public class LinkedBufferInput extends AbstractInput {
                 off += len;
             }
             link.clear();
-            link.add(ByteBuffer.wrap(copy));
+            link.addLast(ByteBuffer.wrap(copy), true);
             writable = 0;
         }
     }
 
     public int getSize() {
-        int size = 0;
-        for(ByteBuffer bb : link) {
-            size += bb.remaining();
-        }
         return size;
     }
 
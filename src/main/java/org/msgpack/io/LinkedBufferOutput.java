@@ -17,6 +17,10 @@
 //
 package org.msgpack.io;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.LinkedList;
 
 public final class LinkedBufferOutput extends BufferedOutput {
@@ -24,11 +28,13 @@ public final class LinkedBufferOutput extends BufferedOutput {
         final byte[] buffer;
         final int offset;
         final int size;
+        final boolean owned;
 
-        Link(byte[] buffer, int offset, int size) {
+        Link(byte[] buffer, int offset, int size, boolean owned) {
             this.buffer = buffer;
             this.offset = offset;
             this.size = size;
+            this.owned = owned;
         }
     }
 
@@ -36,7 +42,17 @@ public final class LinkedBufferOutput extends BufferedOutput {
     private int size;
 
     public LinkedBufferOutput(int bufferSize) {
-        super(bufferSize);
+        this(bufferSize, BufferAllocator.HEAP);
+    }
+
+    /**
+     * Chunks are obtained from the allocator and handed back to it by
+     * {@link #clear()} and {@link #close()}. Arrays passed to
+     * {@link #write(byte[], int, int)} that are linked without copying are
+     * never released.
+     */
+    public LinkedBufferOutput(int bufferSize, BufferAllocator allocator) {
+        super(bufferSize, allocator);
         link = new LinkedList<Link>();
     }
 
@@ -53,24 +69,125 @@ public final class LinkedBufferOutput extends BufferedOutput {
         return bytes;
     }
 
+    /**
+     * Returns read-only views of the written chunks, in order, without
+     * copying them. The views share memory with this output and become
+     * invalid once it is cleared or closed.
+     */
+    public ByteBuffer[] toByteBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[link.size() + (filled > 0 ? 1 : 0)];
+        int i = 0;
+        for (Link l : link) {
+            buffers[i++] = ByteBuffer.wrap(l.buffer, l.offset, l.size).slice().asReadOnlyBuffer();
+        }
+        if (filled > 0) {
+            buffers[i] = ByteBuffer.wrap(buffer, 0, filled).slice().asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        for (Link l : link) {
+            out.write(l.buffer, l.offset, l.size);
+        }
+        if (filled > 0) {
+            out.write(buffer, 0, filled);
+        }
+    }
+
+    /**
+     * Writes all chunks with gathering writes, repeating them until every
+     * byte has been accepted by the channel. Non-blocking channels are
+     * rejected with {@link java.nio.channels.IllegalBlockingModeException}.
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        return ChannelOutput.writeFully(channel, toByteBuffers());
+    }
+
     public int getSize() {
         return size + filled;
     }
 
+    /**
+     * Overwrites len bytes already written, starting at position as counted
+     * by {@link #getSize()}. Only bytes copied into chunks of this output
+     * can be overwritten, not arrays linked without copying.
+     */
+    public void overwrite(int position, byte[] b, int off, int len) {
+        if (position < 0 || len < 0 || position > getSize() - len) {
+            throw new IndexOutOfBoundsException("position: " + position
+                    + ", len: " + len + ", size: " + getSize());
+        }
+        int start = 0;
+        for (Link l : link) {
+            if (len == 0) {
+                return;
+            }
+            int end = start + l.size;
+            if (position < end) {
+                if (!l.owned) {
+                    throw new IllegalArgumentException(
+                            "bytes at " + position + " are linked without copying");
+                }
+                int n = Math.min(len, end - position);
+                System.arraycopy(b, off, l.buffer, l.offset + position - start, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+            start = end;
+        }
+        if (len > 0) {
+            System.arraycopy(b, off, buffer, position - size, len);
+        }
+    }
+
+    /**
+     * Removes len bytes at position, moving the bytes after them up, if they
+     * are all in the current chunk. Returns false and leaves the output as
+     * it is otherwise.
+     */
+    public boolean remove(int position, int len) {
+        if (position < size || len < 0 || position > getSize() - len) {
+            return false;
+        }
+        int p = position - size;
+        System.arraycopy(buffer, p + len, buffer, p, filled - p - len);
+        filled -= len;
+        return true;
+    }
+
     @Override
     protected boolean flushBuffer(byte[] b, int off, int len) {
-        link.add(new Link(b, off, len));
+        // only the current chunk was allocated by us; anything else is a
+        // caller's array linked without copying
+        link.add(new Link(b, off, len, b == buffer));
         size += len;
         return false;
     }
 
     public void clear() {
-        link.clear();
+        releaseLinks();
         size = 0;
         filled = 0;
     }
 
     @Override
     public void close() {
+        clear();
+        if (buffer != null) {
+            allocator.release(buffer);
+            buffer = null;
+            castByteBuffer = null;
+        }
+    }
+
+    private void releaseLinks() {
+        for (Link l : link) {
+            if (l.owned) {
+                allocator.release(l.buffer);
+            }
+        }
+        link.clear();
     }
 }
@@ -0,0 +1,190 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link Input} that reads a file through a read-only memory mapping.
+ * Files larger than the window size are mapped one window at a time, and
+ * the window moves forward as the file is consumed, so files larger than
+ * 2 GB can be read. Raw bodies that fit in a window are handed to
+ * {@link BufferReferer} as slices of the mapping instead of being copied.
+ */
+public class MappedFileInput extends AbstractInput {
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+
+    private long windowStart;
+    private MappedByteBuffer window;
+    private int nextAdvance;
+
+    public MappedFileInput(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileInput(File file, int windowSize) throws IOException {
+        this(new RandomAccessFile(file, "r").getChannel(), windowSize, true);
+    }
+
+    public MappedFileInput(FileChannel channel, int windowSize) throws IOException {
+        this(channel, windowSize, false);
+    }
+
+    // a channel opened by this class is closed again if it cannot be mapped;
+    // a channel given by the caller is left to the caller
+    private MappedFileInput(FileChannel channel, int windowSize,
+            boolean ownsChannel) throws IOException {
+        if (windowSize < 8) {
+            windowSize = 8;
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.windowStart = 0;
+        boolean mapped = false;
+        try {
+            this.fileSize = channel.size();
+            map(0);
+            mapped = true;
+        } finally {
+            if (!mapped && ownsChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    private void map(long position) throws IOException {
+        long size = Math.min(windowSize, fileSize - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+    }
+
+    /**
+     * Returns the position in the file of the next byte to be read.
+     */
+    public long getPosition() {
+        return windowStart + window.position();
+    }
+
+    private boolean ensure(int n) throws IOException {
+        if (window.remaining() >= n) {
+            return true;
+        }
+        long position = getPosition();
+        if (fileSize - position < n || n > windowSize) {
+            return false;
+        }
+        map(position);
+        return true;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int remain = len;
+        while (remain > 0) {
+            if (!window.hasRemaining()) {
+                long position = getPosition();
+                if (position >= fileSize) {
+                    throw new EOFException();
+                }
+                map(position);
+            }
+            int n = Math.min(remain, window.remaining());
+            window.get(b, off, n);
+            incrReadByteCount(n);
+            remain -= n;
+            off += n;
+        }
+        return len;
+    }
+
+    public boolean tryRefer(BufferReferer ref, int len) throws IOException {
+        if (!ensure(len)) {
+            return false;
+        }
+        ByteBuffer bb = window.slice();
+        bb.limit(len);
+        ref.refer(bb, true);
+        window.position(window.position() + len);
+        incrReadByteCount(len);
+        return true;
+    }
+
+    public byte readByte() throws IOException {
+        if (!ensure(1)) {
+            throw new EOFException();
+        }
+        incrReadOneByteCount();
+        return window.get();
+    }
+
+    public void advance() {
+        window.position(window.position() + nextAdvance);
+        incrReadByteCount(nextAdvance);
+        nextAdvance = 0;
+    }
+
+    private void require(int n) throws IOException {
+        if (!ensure(n)) {
+            throw new EOFException();
+        }
+        nextAdvance = n;
+    }
+
+    public byte getByte() throws IOException {
+        require(1);
+        return window.get(window.position());
+    }
+
+    public short getShort() throws IOException {
+        require(2);
+        return window.getShort(window.position());
+    }
+
+    public int getInt() throws IOException {
+        require(4);
+        return window.getInt(window.position());
+    }
+
+    public long getLong() throws IOException {
+        require(8);
+        return window.getLong(window.position());
+    }
+
+    public float getFloat() throws IOException {
+        require(4);
+        return window.getFloat(window.position());
+    }
+
+    public double getDouble() throws IOException {
+        require(8);
+        return window.getDouble(window.position());
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
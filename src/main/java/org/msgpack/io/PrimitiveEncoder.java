@@ -0,0 +1,126 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+/**
+ * Encodes single MessagePack numbers into caller-supplied arrays, choosing
+ * the same formats as {@link org.msgpack.packer.MessagePackPacker}. Used to
+ * write arrays of primitives in one loop with one capacity check per run
+ * of elements.
+ */
+public final class PrimitiveEncoder {
+    public static final int MAX_INT_SIZE = 5;
+
+    public static final int MAX_LONG_SIZE = 9;
+
+    public static final int FLOAT_SIZE = 5;
+
+    public static final int DOUBLE_SIZE = 9;
+
+    private PrimitiveEncoder() {
+    }
+
+    /**
+     * Encodes d at b[p] and returns the position after it.
+     */
+    public static int putInt(byte[] b, int p, int d) {
+        if (d < -(1 << 5)) {
+            if (d < -(1 << 15)) {
+                // signed 32
+                b[p] = (byte) 0xd2;
+                return putInt32(b, p + 1, d);
+            } else if (d < -(1 << 7)) {
+                // signed 16
+                b[p] = (byte) 0xd1;
+                return putInt16(b, p + 1, d);
+            } else {
+                // signed 8
+                b[p] = (byte) 0xd0;
+                b[p + 1] = (byte) d;
+                return p + 2;
+            }
+        } else if (d < (1 << 7)) {
+            // fixnum
+            b[p] = (byte) d;
+            return p + 1;
+        } else {
+            if (d < (1 << 8)) {
+                // unsigned 8
+                b[p] = (byte) 0xcc;
+                b[p + 1] = (byte) d;
+                return p + 2;
+            } else if (d < (1 << 16)) {
+                // unsigned 16
+                b[p] = (byte) 0xcd;
+                return putInt16(b, p + 1, d);
+            } else {
+                // unsigned 32
+                b[p] = (byte) 0xce;
+                return putInt32(b, p + 1, d);
+            }
+        }
+    }
+
+    public static int putLong(byte[] b, int p, long d) {
+        if (d >= Integer.MIN_VALUE && d < (1L << 31)) {
+            return putInt(b, p, (int) d);
+        }
+        if (d < 0) {
+            // signed 64
+            b[p] = (byte) 0xd3;
+            return putInt64(b, p + 1, d);
+        } else if (d < (1L << 32)) {
+            // unsigned 32
+            b[p] = (byte) 0xce;
+            return putInt32(b, p + 1, (int) d);
+        } else {
+            // unsigned 64
+            b[p] = (byte) 0xcf;
+            return putInt64(b, p + 1, d);
+        }
+    }
+
+    public static int putFloat(byte[] b, int p, float d) {
+        b[p] = (byte) 0xca;
+        return putInt32(b, p + 1, Float.floatToRawIntBits(d));
+    }
+
+    public static int putDouble(byte[] b, int p, double d) {
+        b[p] = (byte) 0xcb;
+        return putInt64(b, p + 1, Double.doubleToRawLongBits(d));
+    }
+
+    private static int putInt16(byte[] b, int p, int v) {
+        b[p] = (byte) (v >> 8);
+        b[p + 1] = (byte) v;
+        return p + 2;
+    }
+
+    private static int putInt32(byte[] b, int p, int v) {
+        b[p] = (byte) (v >> 24);
+        b[p + 1] = (byte) (v >> 16);
+        b[p + 2] = (byte) (v >> 8);
+        b[p + 3] = (byte) v;
+        return p + 4;
+    }
+
+    private static int putInt64(byte[] b, int p, long v) {
+        putInt32(b, p, (int) (v >> 32));
+        return putInt32(b, p + 4, (int) v);
+    }
+}
@@ -0,0 +1,74 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+import java.util.ArrayDeque;
+
+/**
+ * Free lists of pooled chunks, striped by thread id so that threads which
+ * pack concurrently rarely contend on the same lock.
+ */
+final class StripedPool<T> {
+    private final int maxPooledPerStripe;
+    private final ArrayDeque<T>[] stripes;
+    private final int mask;
+
+    @SuppressWarnings("unchecked")
+    StripedPool(int maxPooledPerStripe) {
+        this.maxPooledPerStripe = maxPooledPerStripe;
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() * 2) {
+            n <<= 1;
+        }
+        stripes = new ArrayDeque[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ArrayDeque<T>();
+        }
+        mask = n - 1;
+    }
+
+    int size() {
+        int count = 0;
+        for (ArrayDeque<T> stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    T poll() {
+        ArrayDeque<T> stripe = stripe();
+        synchronized (stripe) {
+            return stripe.pollLast();
+        }
+    }
+
+    void offer(T chunk) {
+        ArrayDeque<T> stripe = stripe();
+        synchronized (stripe) {
+            if (stripe.size() < maxPooledPerStripe) {
+                stripe.addLast(chunk);
+            }
+        }
+    }
+
+    private ArrayDeque<T> stripe() {
+        return stripes[(int) Thread.currentThread().getId() & mask];
+    }
+}
@@ -0,0 +1,114 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+/**
+ * UTF-8 encoding of Strings into caller-supplied arrays, without the
+ * temporary arrays of {@link String#getBytes(String)}. Unpaired surrogates
+ * are encoded as '?', the same replacement String#getBytes uses.
+ */
+public final class UTF8 {
+    private UTF8() {
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode} produces for s.
+     */
+    public static int encodedLength(String s) {
+        final int len = s.length();
+        int i = 0;
+        // ASCII prefix
+        while (i < len && s.charAt(i) < 0x80) {
+            i++;
+        }
+        int n = i;
+        while (i < len) {
+            char c = s.charAt(i++);
+            if (c < 0x80) {
+                n += 1;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (Character.isHighSurrogate(c) && i < len
+                    && Character.isLowSurrogate(s.charAt(i))) {
+                i++;
+                n += 4;
+            } else if (isSurrogate(c)) {
+                n += 1;
+            } else {
+                n += 3;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the end of the longest run of chars starting at off whose
+     * encoding fits in room bytes (at least 6) and which does not split a
+     * surrogate pair.
+     */
+    public static int chunkEnd(String s, int off, int room) {
+        int end = Math.min(s.length(), off + room / 3);
+        if (end < s.length() && Character.isHighSurrogate(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Encodes s[off, end) into dst starting at dstOff and returns the
+     * position after the last byte written. dst must have room for the
+     * encoded bytes; 3 * (end - off) is always enough.
+     */
+    public static int encode(String s, int off, int end, byte[] dst, int dstOff) {
+        int i = off;
+        int d = dstOff;
+        char c;
+        // ASCII fast path
+        while (i < end && (c = s.charAt(i)) < 0x80) {
+            dst[d++] = (byte) c;
+            i++;
+        }
+        while (i < end) {
+            c = s.charAt(i++);
+            if (c < 0x80) {
+                dst[d++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[d++] = (byte) (0xc0 | (c >> 6));
+                dst[d++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i < end
+                    && Character.isLowSurrogate(s.charAt(i))) {
+                int cp = Character.toCodePoint(c, s.charAt(i++));
+                dst[d++] = (byte) (0xf0 | (cp >> 18));
+                dst[d++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                dst[d++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                dst[d++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (isSurrogate(c)) {
+                dst[d++] = (byte) '?';
+            } else {
+                dst[d++] = (byte) (0xe0 | (c >> 12));
+                dst[d++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                dst[d++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return d;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+}
@@ -0,0 +1,37 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.io;
+
+/**
+ * Notified when the number of bytes buffered by a {@link LinkedBufferInput}
+ * crosses its water marks, so that a producer feeding it can pause and
+ * resume.
+ */
+public interface WaterMarkListener {
+    /**
+     * Called from {@code feed} when the buffered size reaches the high water
+     * mark.
+     */
+    public void onHighWaterMark(LinkedBufferInput input);
+
+    /**
+     * Called once the buffered size drops to the low water mark after the
+     * high water mark was reached.
+     */
+    public void onLowWaterMark(LinkedBufferInput input);
+}
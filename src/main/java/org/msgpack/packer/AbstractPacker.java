@@ -19,12 +19,20 @@ package org.msgpack.packer;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import org.msgpack.type.RawMessage;
+import org.msgpack.unpacker.MessagePackBufferUnpacker;
 import org.msgpack.type.Value;
 import org.msgpack.MessagePack;
+import org.msgpack.MessageTypeException;
 import org.msgpack.template.Template;
 
 public abstract class AbstractPacker implements Packer {
+    private static final int STREAMING_BUFFER_SIZE = 8 * 1024;
+
     protected MessagePack msgpack;
 
     protected AbstractPacker(MessagePack msgpack) {
@@ -215,6 +223,170 @@ public abstract class AbstractPacker implements Packer {
         return this;
     }
 
+    @Override
+    public Packer writeExt(byte type, byte[] data) throws IOException {
+        if (data == null) {
+            writeNil();
+        } else {
+            writeExtValue(type, data, 0, data.length);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeExt(byte type, byte[] data, int off, int len) throws IOException {
+        if (data == null) {
+            writeNil();
+        } else {
+            writeExtValue(type, data, off, len);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeArray(int[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayBegin(len);
+        for (int i = off; i < off + len; i++) {
+            writeInt(a[i]);
+        }
+        return writeArrayEnd();
+    }
+
+    @Override
+    public Packer writeArray(long[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayBegin(len);
+        for (int i = off; i < off + len; i++) {
+            writeLong(a[i]);
+        }
+        return writeArrayEnd();
+    }
+
+    @Override
+    public Packer writeArray(float[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayBegin(len);
+        for (int i = off; i < off + len; i++) {
+            writeFloat(a[i]);
+        }
+        return writeArrayEnd();
+    }
+
+    @Override
+    public Packer writeArray(double[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayBegin(len);
+        for (int i = off; i < off + len; i++) {
+            writeDouble(a[i]);
+        }
+        return writeArrayEnd();
+    }
+
+    protected static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len
+                    + ", length: " + length);
+        }
+    }
+
+    /**
+     * Decodes the message and writes its value. Packers that write
+     * MessagePack copy the bytes instead.
+     */
+    @Override
+    public Packer writeRawMessage(RawMessage msg) throws IOException {
+        if (msg == null) {
+            writeNil();
+            return this;
+        }
+        // msgpack may create unpackers of another format, such as JSON
+        Value v = new MessagePackBufferUnpacker(msgpack)
+                .wrap(msg.getBuffer(), msg.getOffset(), msg.getLength()).readValue();
+        v.writeTo(this);
+        return this;
+    }
+
+    @Override
+    public Packer writeRawMessage(byte[] b) throws IOException {
+        return writeRawMessage(b, 0, b.length);
+    }
+
+    @Override
+    public Packer writeRawMessage(byte[] b, int off, int len) throws IOException {
+        return writeRawMessage(new RawMessage(b, off, len));
+    }
+
+    @Override
+    public Packer writeRawMessage(ByteBuffer bb) throws IOException {
+        if (bb.hasArray()) {
+            return writeRawMessage(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+        }
+        byte[] b = new byte[bb.remaining()];
+        bb.duplicate().get(b);
+        return writeRawMessage(b, 0, b.length);
+    }
+
+    @Override
+    public Packer writeRawBegin(int size) throws IOException {
+        throw new MessageTypeException("streaming raw values are not supported by " + getClass().getName());
+    }
+
+    @Override
+    public Packer writeRawBody(byte[] b, int off, int len) throws IOException {
+        throw new MessageTypeException("streaming raw values are not supported by " + getClass().getName());
+    }
+
+    @Override
+    public Packer writeRawEnd() throws IOException {
+        throw new MessageTypeException("streaming raw values are not supported by " + getClass().getName());
+    }
+
+    @Override
+    public Packer writeRaw(InputStream in, int size) throws IOException {
+        writeRawBegin(size);
+        byte[] buffer = new byte[Math.min(size, STREAMING_BUFFER_SIZE)];
+        int remain = size;
+        while (remain > 0) {
+            int n = in.read(buffer, 0, Math.min(remain, buffer.length));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            writeRawBody(buffer, 0, n);
+            remain -= n;
+        }
+        return writeRawEnd();
+    }
+
+    @Override
+    public Packer writeRaw(FileChannel in, long position, int size) throws IOException {
+        writeRawBegin(size);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(size, STREAMING_BUFFER_SIZE));
+        int remain = size;
+        while (remain > 0) {
+            buffer.clear();
+            buffer.limit(Math.min(remain, buffer.capacity()));
+            int n = in.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            writeRawBody(buffer.array(), 0, n);
+            position += n;
+            remain -= n;
+        }
+        return writeRawEnd();
+    }
+
+    @Override
+    public Packer writeArrayBegin() throws IOException {
+        throw new MessageTypeException("arrays of unknown size are not supported by " + getClass().getName());
+    }
+
+    @Override
+    public Packer writeMapBegin() throws IOException {
+        throw new MessageTypeException("maps of unknown size are not supported by " + getClass().getName());
+    }
+
     @Override
     public Packer writeArrayEnd() throws IOException {
         writeArrayEnd(true);
@@ -256,4 +428,8 @@ public abstract class AbstractPacker implements Packer {
     abstract protected void writeByteBuffer(ByteBuffer bb) throws IOException;
 
     abstract protected void writeString(String s) throws IOException;
+
+    protected void writeExtValue(byte type, byte[] b, int off, int len) throws IOException {
+        throw new MessageTypeException("ext values are not supported by " + getClass().getName());
+    }
 }
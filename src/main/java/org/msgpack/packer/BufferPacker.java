@@ -17,6 +17,11 @@
 //
 package org.msgpack.packer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
 /**
  * This class is buffer-specific serializer.
  * 
@@ -28,5 +33,26 @@ public interface BufferPacker extends Packer {
 
     public byte[] toByteArray();
 
+    /**
+     * Returns read-only views of the serialized data without copying it. The
+     * views are valid until {@link #clear()} or {@link #close()} is called.
+     */
+    public ByteBuffer[] toByteBuffers();
+
+    public void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes the serialized data to the channel with gathering writes,
+     * blocking until all of it has been written. The channel must be in
+     * blocking mode; a non-blocking
+     * {@link java.nio.channels.SelectableChannel} is rejected with
+     * {@link java.nio.channels.IllegalBlockingModeException} before anything
+     * is written. To write to a non-blocking channel, use
+     * {@link #toByteBuffers()} and keep the views across writes.
+     * 
+     * @return the number of bytes written
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException;
+
     public void clear();
 }
@@ -17,6 +17,11 @@
 //
 package org.msgpack.packer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
 import org.msgpack.MessagePack;
 import org.msgpack.io.LinkedBufferOutput;
 
@@ -28,7 +33,8 @@ public class MessagePackBufferPacker extends MessagePackPacker implements Buffer
     }
 
     public MessagePackBufferPacker(MessagePack msgpack, int bufferSize) {
-        super(msgpack, new LinkedBufferOutput(bufferSize));
+        super(msgpack, new LinkedBufferOutput(bufferSize,
+                msgpack.getBufferAllocator()));
     }
 
     public int getBufferSize() {
@@ -39,6 +45,18 @@ public class MessagePackBufferPacker extends MessagePackPacker implements Buffer
         return ((LinkedBufferOutput) out).toByteArray();
     }
 
+    public ByteBuffer[] toByteBuffers() {
+        return ((LinkedBufferOutput) out).toByteBuffers();
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        ((LinkedBufferOutput) out).writeTo(stream);
+    }
+
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        return ((LinkedBufferOutput) out).writeTo(channel);
+    }
+
     public void clear() {
         reset();
         ((LinkedBufferOutput) out).clear();
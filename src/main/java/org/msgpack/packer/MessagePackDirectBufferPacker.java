@@ -0,0 +1,68 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.packer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import org.msgpack.MessagePack;
+import org.msgpack.io.DirectBufferOutput;
+import org.msgpack.io.DirectBufferPool;
+
+/**
+ * {@link BufferPacker} that serializes into pooled direct buffers. The
+ * buffers returned by {@link #toByteBuffers()} are direct, so they can be
+ * passed to NIO channels without a copy. Close the packer to return its
+ * buffers to the pool.
+ */
+public class MessagePackDirectBufferPacker extends MessagePackPacker implements BufferPacker {
+    public MessagePackDirectBufferPacker(MessagePack msgpack) {
+        this(msgpack, DirectBufferPool.getDefault());
+    }
+
+    public MessagePackDirectBufferPacker(MessagePack msgpack, DirectBufferPool pool) {
+        super(msgpack, new DirectBufferOutput(pool));
+    }
+
+    public int getBufferSize() {
+        return ((DirectBufferOutput) out).getSize();
+    }
+
+    public byte[] toByteArray() {
+        return ((DirectBufferOutput) out).toByteArray();
+    }
+
+    public ByteBuffer[] toByteBuffers() {
+        return ((DirectBufferOutput) out).toByteBuffers();
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        ((DirectBufferOutput) out).writeTo(stream);
+    }
+
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        return ((DirectBufferOutput) out).writeTo(channel);
+    }
+
+    public void clear() {
+        reset();
+        ((DirectBufferOutput) out).clear();
+    }
+}
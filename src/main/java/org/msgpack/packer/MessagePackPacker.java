@@ -18,27 +18,63 @@
 package org.msgpack.packer;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.ByteBuffer;
 import java.math.BigInteger;
+import java.util.Arrays;
+import org.msgpack.io.ChannelOutput;
+import org.msgpack.io.LinkedBufferOutput;
 import org.msgpack.io.Output;
+import org.msgpack.io.PrimitiveEncoder;
 import org.msgpack.io.StreamOutput;
+import org.msgpack.io.UTF8;
 import org.msgpack.MessagePack;
 import org.msgpack.MessageTypeException;
+import org.msgpack.type.RawMessage;
 
 public class MessagePackPacker extends AbstractPacker {
     protected final Output out;
 
     private PackerStack stack = new PackerStack();
 
+    private final boolean spec2013Enabled;
+
+    private final StringCache stringCache;
+
+    private static final int ENCODE_BUFFER_SIZE = 8 * 1024;
+
+    // scratch space for writeString and writeArray on outputs that are not
+    // filled in place
+    private byte[] encodeBuffer;
+
+    // scratch space for the longest string header, str 32
+    private final byte[] headerBuffer = new byte[5];
+
+    // counted down by the elements of a map of unknown size
+    private static final int DEFERRED_MAP_COUNT = Integer.MAX_VALUE - 1;
+
+    // 1 + the position of the reserved header of the container at each
+    // depth of the stack whose size is not known yet, or 0
+    private int[] deferredHeaders;
+
+    // bytes of the streamed raw body still to be written, or -1
+    private int rawRemaining = -1;
+
     public MessagePackPacker(MessagePack msgpack, OutputStream stream) {
         this(msgpack, new StreamOutput(stream));
     }
 
+    public MessagePackPacker(MessagePack msgpack, WritableByteChannel channel) {
+        this(msgpack, new ChannelOutput(channel));
+    }
+
     protected MessagePackPacker(MessagePack msgpack, Output out) {
         super(msgpack);
         this.out = out;
+        this.spec2013Enabled = msgpack.isSpec2013Enabled();
+        this.stringCache = msgpack.getStringCache();
     }
 
     @Override
@@ -191,9 +227,7 @@ public class MessagePackPacker extends AbstractPacker {
         stack.reduceCount();
     }
 
-    @Override
-    protected void writeByteArray(byte[] b, int off, int len)
-            throws IOException {
+    private void writeRawHeader(int len) throws IOException {
         if (len < 32) {
             out.writeByte((byte) (0xa0 | len));
         } else if (len < 65536) {
@@ -201,6 +235,61 @@ public class MessagePackPacker extends AbstractPacker {
         } else {
             out.writeByteAndInt((byte) 0xdb, len);
         }
+    }
+
+    private void writeStringHeader(int len) throws IOException {
+        int n = putStringHeader(headerBuffer, len);
+        out.write(headerBuffer, 0, n);
+    }
+
+    // stores the header of a string of len bytes at the start of b and
+    // returns its size
+    private int putStringHeader(byte[] b, int len) {
+        if (len < 32) {
+            // fix str
+            b[0] = (byte) (0xa0 | len);
+            return 1;
+        } else if (spec2013Enabled && len < 256) {
+            // str 8
+            b[0] = (byte) 0xd9;
+            b[1] = (byte) len;
+            return 2;
+        } else if (len < 65536) {
+            // str 16, the same as raw 16
+            b[0] = (byte) 0xda;
+            b[1] = (byte) (len >> 8);
+            b[2] = (byte) len;
+            return 3;
+        } else {
+            // str 32, the same as raw 32
+            b[0] = (byte) 0xdb;
+            b[1] = (byte) (len >> 24);
+            b[2] = (byte) (len >> 16);
+            b[3] = (byte) (len >> 8);
+            b[4] = (byte) len;
+            return 5;
+        }
+    }
+
+    private void writeBinaryHeader(int len) throws IOException {
+        if (!spec2013Enabled) {
+            writeRawHeader(len);
+        } else if (len < 256) {
+            // bin 8
+            out.writeByteAndByte((byte) 0xc4, (byte) len);
+        } else if (len < 65536) {
+            // bin 16
+            out.writeByteAndShort((byte) 0xc5, (short) len);
+        } else {
+            // bin 32
+            out.writeByteAndInt((byte) 0xc6, len);
+        }
+    }
+
+    @Override
+    protected void writeByteArray(byte[] b, int off, int len)
+            throws IOException {
+        writeBinaryHeader(len);
         out.write(b, off, len);
         stack.reduceCount();
     }
@@ -208,13 +297,7 @@ public class MessagePackPacker extends AbstractPacker {
     @Override
     protected void writeByteBuffer(ByteBuffer bb) throws IOException {
         int len = bb.remaining();
-        if (len < 32) {
-            out.writeByte((byte) (0xa0 | len));
-        } else if (len < 65536) {
-            out.writeByteAndShort((byte) 0xda, (short) len);
-        } else {
-            out.writeByteAndInt((byte) 0xdb, len);
-        }
+        writeBinaryHeader(len);
         int pos = bb.position();
         try {
             out.write(bb);
@@ -226,14 +309,265 @@ public class MessagePackPacker extends AbstractPacker {
 
     @Override
     protected void writeString(String s) throws IOException {
-        byte[] b;
+        if (stringCache != null) {
+            byte[] b = stringCache.get(s, spec2013Enabled);
+            if (b == null && stringCache.accepts(s)) {
+                b = encodeString(s);
+                stringCache.put(s, spec2013Enabled, b);
+            }
+            if (b != null) {
+                out.write(b, 0, b.length);
+                stack.reduceCount();
+                return;
+            }
+        }
+        int len = UTF8.encodedLength(s);
+        writeStringHeader(len);
+        if (out instanceof LinkedBufferOutput) {
+            ((LinkedBufferOutput) out).writeUTF8(s);
+        } else {
+            writeUTF8Copying(s);
+        }
+        stack.reduceCount();
+    }
+
+    // the same bytes writeString writes, in an array of their own
+    private byte[] encodeString(String s) {
+        int len = UTF8.encodedLength(s);
+        int off = putStringHeader(headerBuffer, len);
+        byte[] b = new byte[off + len];
+        System.arraycopy(headerBuffer, 0, b, 0, off);
+        UTF8.encode(s, 0, s.length(), b, off);
+        return b;
+    }
+
+    private void writeUTF8Copying(String s) throws IOException {
+        final int slen = s.length();
+        byte[] buf = encodeBuffer(slen, 3);
+        int off = 0;
+        while (off < slen) {
+            int end = UTF8.chunkEnd(s, off, buf.length);
+            int n = UTF8.encode(s, off, end, buf, 0);
+            out.write(buf, 0, n);
+            off = end;
+        }
+    }
+
+    // room for count items of at most itemSize bytes if they are few,
+    // chunks of them otherwise
+    private byte[] encodeBuffer(int count, int itemSize) {
+        int want = count < ENCODE_BUFFER_SIZE / itemSize ? Math.max(count * itemSize, 64)
+                : ENCODE_BUFFER_SIZE;
+        if (encodeBuffer == null || encodeBuffer.length < want) {
+            encodeBuffer = new byte[want];
+        }
+        return encodeBuffer;
+    }
+
+    // LinkedBufferOutput is filled in place; other outputs copy what they
+    // are given, so the elements are encoded into encodeBuffer first
+
+    @Override
+    public Packer writeArray(int[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayHeader(len);
+        if (out instanceof LinkedBufferOutput) {
+            ((LinkedBufferOutput) out).writeIntArray(a, off, len);
+            return this;
+        }
+        byte[] buf = encodeBuffer(len, PrimitiveEncoder.MAX_INT_SIZE);
+        final int end = off + len;
+        while (off < end) {
+            int runEnd = Math.min(end, off + buf.length / PrimitiveEncoder.MAX_INT_SIZE);
+            int p = 0;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putInt(buf, p, a[off]);
+            }
+            out.write(buf, 0, p);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeArray(long[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayHeader(len);
+        if (out instanceof LinkedBufferOutput) {
+            ((LinkedBufferOutput) out).writeLongArray(a, off, len);
+            return this;
+        }
+        byte[] buf = encodeBuffer(len, PrimitiveEncoder.MAX_LONG_SIZE);
+        final int end = off + len;
+        while (off < end) {
+            int runEnd = Math.min(end, off + buf.length / PrimitiveEncoder.MAX_LONG_SIZE);
+            int p = 0;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putLong(buf, p, a[off]);
+            }
+            out.write(buf, 0, p);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeArray(float[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayHeader(len);
+        if (out instanceof LinkedBufferOutput) {
+            ((LinkedBufferOutput) out).writeFloatArray(a, off, len);
+            return this;
+        }
+        byte[] buf = encodeBuffer(len, PrimitiveEncoder.FLOAT_SIZE);
+        final int end = off + len;
+        while (off < end) {
+            int runEnd = Math.min(end, off + buf.length / PrimitiveEncoder.FLOAT_SIZE);
+            int p = 0;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putFloat(buf, p, a[off]);
+            }
+            out.write(buf, 0, p);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeArray(double[] a, int off, int len) throws IOException {
+        checkRange(a.length, off, len);
+        writeArrayHeader(len);
+        if (out instanceof LinkedBufferOutput) {
+            ((LinkedBufferOutput) out).writeDoubleArray(a, off, len);
+            return this;
+        }
+        byte[] buf = encodeBuffer(len, PrimitiveEncoder.DOUBLE_SIZE);
+        final int end = off + len;
+        while (off < end) {
+            int runEnd = Math.min(end, off + buf.length / PrimitiveEncoder.DOUBLE_SIZE);
+            int p = 0;
+            for (; off < runEnd; off++) {
+                p = PrimitiveEncoder.putDouble(buf, p, a[off]);
+            }
+            out.write(buf, 0, p);
+        }
+        return this;
+    }
+
+    @Override
+    public Packer writeRawMessage(RawMessage msg) throws IOException {
+        if (msg == null) {
+            writeNil();
+            return this;
+        }
+        stack.checkCount();
+        out.write(msg.getBuffer(), msg.getOffset(), msg.getLength());
+        stack.reduceCount();
+        return this;
+    }
+
+    @Override
+    public Packer writeRawMessage(ByteBuffer bb) throws IOException {
+        if (bb.hasArray()) {
+            return super.writeRawMessage(bb);
+        }
+        RawMessage.validate(bb);
+        stack.checkCount();
+        int pos = bb.position();
         try {
-            // TODO encoding error?
-            b = s.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            throw new MessageTypeException(ex);
+            out.write(bb);
+        } finally {
+            bb.position(pos);
+        }
+        stack.reduceCount();
+        return this;
+    }
+
+    @Override
+    public Packer writeRawBegin(int size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("negative raw size: " + size);
+        }
+        if (rawRemaining >= 0) {
+            throw new MessageTypeException(
+                    "writeRawBegin() is called while the previous raw value is not ended");
+        }
+        stack.checkCount();
+        writeBinaryHeader(size);
+        rawRemaining = size;
+        return this;
+    }
+
+    @Override
+    public Packer writeRawBody(byte[] b, int off, int len) throws IOException {
+        if (len > rawRemaining) {
+            throw new MessageTypeException(
+                    "writeRawBody() is called with more bytes than writeRawBegin() declared");
         }
-        writeByteArray(b, 0, b.length);
+        if (out instanceof LinkedBufferOutput) {
+            // callers reuse b for the next part of the body
+            ((LinkedBufferOutput) out).writeCopy(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
+        rawRemaining -= len;
+        return this;
+    }
+
+    @Override
+    public Packer writeRawEnd() throws IOException {
+        if (rawRemaining != 0) {
+            throw new MessageTypeException(
+                    "writeRawEnd() is called but the raw body is not written completely");
+        }
+        rawRemaining = -1;
+        stack.reduceCount();
+        return this;
+    }
+
+    @Override
+    public Packer writeRaw(FileChannel in, long position, int size)
+            throws IOException {
+        if (!(out instanceof ChannelOutput)) {
+            return super.writeRaw(in, position, size);
+        }
+        writeRawBegin(size);
+        ((ChannelOutput) out).transferFrom(in, position, size);
+        rawRemaining = 0;
+        return writeRawEnd();
+    }
+
+    @Override
+    protected void writeExtValue(byte type, byte[] b, int off, int len)
+            throws IOException {
+        switch (len) {
+        case 1:
+            out.writeByteAndByte((byte) 0xd4, type);
+            break;
+        case 2:
+            out.writeByteAndByte((byte) 0xd5, type);
+            break;
+        case 4:
+            out.writeByteAndByte((byte) 0xd6, type);
+            break;
+        case 8:
+            out.writeByteAndByte((byte) 0xd7, type);
+            break;
+        case 16:
+            out.writeByteAndByte((byte) 0xd8, type);
+            break;
+        default:
+            if (len < 256) {
+                // ext 8
+                out.writeByteAndShort((byte) 0xc7, (short) ((len << 8) | (type & 0xff)));
+            } else if (len < 65536) {
+                // ext 16
+                out.writeByteAndShort((byte) 0xc8, (short) len);
+                out.writeByte(type);
+            } else {
+                // ext 32
+                out.writeByteAndInt((byte) 0xc9, len);
+                out.writeByte(type);
+            }
+        }
+        out.write(b, off, len);
         stack.reduceCount();
     }
 
@@ -246,6 +580,22 @@ public class MessagePackPacker extends AbstractPacker {
 
     @Override
     public Packer writeArrayBegin(int size) throws IOException {
+        writeArrayHeader(size);
+        stack.pushArray(size);
+        return this;
+    }
+
+    @Override
+    public Packer writeArrayBegin() throws IOException {
+        int position = reserveHeader("arrays");
+        out.writeByteAndInt((byte) 0xdd, 0);
+        stack.reduceCount();
+        stack.pushArray(Integer.MAX_VALUE);
+        deferredHeaders[stack.getDepth()] = position + 1;
+        return this;
+    }
+
+    private void writeArrayHeader(int size) throws IOException {
         // TODO check size < 0?
         if (size < 16) {
             // FixArray
@@ -256,8 +606,6 @@ public class MessagePackPacker extends AbstractPacker {
             out.writeByteAndInt((byte) 0xdd, size);
         }
         stack.reduceCount();
-        stack.pushArray(size);
-        return this;
     }
 
     @Override
@@ -266,6 +614,12 @@ public class MessagePackPacker extends AbstractPacker {
             throw new MessageTypeException(
                     "writeArrayEnd() is called but writeArrayBegin() is not called");
         }
+        if (isDeferred()) {
+            int size = Integer.MAX_VALUE - stack.getTopCount();
+            patchHeader(size, (byte) 0x90, (byte) 0xdc, (byte) 0xdd);
+            stack.pop();
+            return this;
+        }
 
         int remain = stack.getTopCount();
         if (remain > 0) {
@@ -297,12 +651,70 @@ public class MessagePackPacker extends AbstractPacker {
         return this;
     }
 
+    @Override
+    public Packer writeMapBegin() throws IOException {
+        int position = reserveHeader("maps");
+        out.writeByteAndInt((byte) 0xdf, 0);
+        stack.reduceCount();
+        stack.pushMap(DEFERRED_MAP_COUNT / 2);
+        deferredHeaders[stack.getDepth()] = position + 1;
+        return this;
+    }
+
+    // returns where the header of a container of unknown size goes
+    private int reserveHeader(String what) {
+        if (!(out instanceof LinkedBufferOutput)) {
+            throw new MessageTypeException(what + " of unknown size are not supported by "
+                    + getClass().getName());
+        }
+        stack.checkCount();
+        if (deferredHeaders == null) {
+            deferredHeaders = new int[PackerStack.MAX_STACK_SIZE];
+        }
+        return ((LinkedBufferOutput) out).getSize();
+    }
+
+    private boolean isDeferred() {
+        return deferredHeaders != null && deferredHeaders[stack.getDepth()] != 0;
+    }
+
+    // replaces the reserved 5 byte header of the top container with one for
+    // size, compact if the container can still be moved up
+    private void patchHeader(int size, byte fix, byte type16, byte type32) {
+        LinkedBufferOutput lbo = (LinkedBufferOutput) out;
+        int position = deferredHeaders[stack.getDepth()] - 1;
+        deferredHeaders[stack.getDepth()] = 0;
+        byte[] header;
+        if (size < 16) {
+            header = new byte[] { (byte) (fix | size) };
+        } else if (size < 65536) {
+            header = new byte[] { type16, (byte) (size >> 8), (byte) size };
+        } else {
+            header = null;
+        }
+        if (header == null || !lbo.remove(position + header.length, 5 - header.length)) {
+            header = new byte[] { type32, (byte) (size >> 24), (byte) (size >> 16),
+                    (byte) (size >> 8), (byte) size };
+        }
+        lbo.overwrite(position, header, 0, header.length);
+    }
+
     @Override
     public Packer writeMapEnd(boolean check) throws IOException {
         if (!stack.topIsMap()) {
             throw new MessageTypeException(
                     "writeMapEnd() is called but writeMapBegin() is not called");
         }
+        if (isDeferred()) {
+            int count = DEFERRED_MAP_COUNT - stack.getTopCount();
+            if (count % 2 != 0) {
+                throw new MessageTypeException(
+                        "writeMapEnd() is called but the last key has no value");
+            }
+            patchHeader(count / 2, (byte) 0x80, (byte) 0xde, (byte) 0xdf);
+            stack.pop();
+            return this;
+        }
 
         int remain = stack.getTopCount();
         if (remain > 0) {
@@ -319,6 +731,10 @@ public class MessagePackPacker extends AbstractPacker {
     }
 
     public void reset() {
+        rawRemaining = -1;
+        if (deferredHeaders != null) {
+            Arrays.fill(deferredHeaders, 0);
+        }
         stack.clear();
     }
 
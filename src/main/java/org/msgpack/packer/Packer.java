@@ -19,9 +19,12 @@ package org.msgpack.packer;
 
 import java.math.BigInteger;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.msgpack.type.RawMessage;
 import org.msgpack.type.Value;
 
 /**
@@ -72,18 +75,109 @@ public interface Packer extends Closeable, Flushable {
 
     public Packer write(Value v) throws IOException;
 
+    public Packer writeExt(byte type, byte[] data) throws IOException;
+
+    public Packer writeExt(byte type, byte[] data, int off, int len) throws IOException;
+
+    /**
+     * Writes the header of a raw value whose body of {@code size} bytes is
+     * then written with {@link #writeRawBody(byte[], int, int)} and closed
+     * with {@link #writeRawEnd()}. With the 2013 specification enabled the
+     * header is bin, as for byte arrays.
+     */
+    public Packer writeRawBegin(int size) throws IOException;
+
+    /**
+     * Writes the next part of the body of a raw value started with
+     * {@link #writeRawBegin(int)}. The bytes are consumed before this
+     * returns, so b may be reused for the next part.
+     */
+    public Packer writeRawBody(byte[] b, int off, int len) throws IOException;
+
+    public Packer writeRawEnd() throws IOException;
+
+    /**
+     * Writes a raw value whose body is copied from the stream in constant
+     * memory.
+     */
+    public Packer writeRaw(InputStream in, int size) throws IOException;
+
+    /**
+     * Writes a raw value whose body is {@code size} bytes of the file from
+     * {@code position}. The file is transferred to the output channel
+     * directly when the packer writes to one.
+     */
+    public Packer writeRaw(FileChannel in, long position, int size) throws IOException;
+
+    /**
+     * Writes {@code a[off, off + len)} as an array. The result is the same as
+     * writing each element between {@link #writeArrayBegin(int)} and
+     * {@link #writeArrayEnd()}, without the bookkeeping per element.
+     */
+    public Packer writeArray(int[] a, int off, int len) throws IOException;
+
+    public Packer writeArray(long[] a, int off, int len) throws IOException;
+
+    public Packer writeArray(float[] a, int off, int len) throws IOException;
+
+    public Packer writeArray(double[] a, int off, int len) throws IOException;
+
+    /**
+     * Writes an object that is already encoded in MessagePack. Its bytes
+     * are copied verbatim and count as one element of an enclosing array or
+     * map.
+     */
+    public Packer writeRawMessage(RawMessage msg) throws IOException;
+
+    /**
+     * Writes the encoded object in {@code b}, which is checked to hold
+     * exactly one complete object.
+     */
+    public Packer writeRawMessage(byte[] b) throws IOException;
+
+    public Packer writeRawMessage(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Writes the encoded object in the remaining bytes of {@code bb}, which
+     * are checked to hold exactly one complete object. The position of
+     * {@code bb} is not changed.
+     */
+    public Packer writeRawMessage(ByteBuffer bb) throws IOException;
+
     public Packer write(Object o) throws IOException;
 
     public Packer writeNil() throws IOException;
 
     public Packer writeArrayBegin(int size) throws IOException;
 
+    /**
+     * Begins an array whose size is not known yet; it is counted as elements
+     * are written and filled in by {@link #writeArrayEnd()}. Only packers
+     * that write to memory support it: a maximum-width header is reserved
+     * and patched, or replaced with a compact one when the array is still in
+     * the last chunk of the buffer. Until the array is ended, the bytes of
+     * the packer are not valid MessagePack.
+     * <p>
+     * An array that spans a chunk boundary keeps the 5-byte array 32
+     * header, so the output can be up to 4 bytes longer than with
+     * {@link #writeArrayBegin(int)}. It decodes to the same value.
+     */
+    public Packer writeArrayBegin() throws IOException;
+
     public Packer writeArrayEnd(boolean check) throws IOException;
 
     public Packer writeArrayEnd() throws IOException;
 
     public Packer writeMapBegin(int size) throws IOException;
 
+    /**
+     * Begins a map whose size is not known yet, as
+     * {@link #writeArrayBegin()} does for arrays. A map that spans a chunk
+     * boundary likewise keeps its 5-byte map 32 header, so the output can
+     * be longer than with {@link #writeMapBegin(int)}.
+     */
+    public Packer writeMapBegin() throws IOException;
+
     public Packer writeMapEnd(boolean check) throws IOException;
 
     public Packer writeMapEnd() throws IOException;
@@ -0,0 +1,192 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.packer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded map from Strings to their encoded msgpack form, header included,
+ * shared by the packers of a {@link org.msgpack.MessagePack} on which it is
+ * set. It is meant for the few hundred strings that recur in every message,
+ * such as map keys and enum-like values: once maxEntries strings are cached,
+ * further strings are encoded as usual and not added. Strings longer than
+ * maxLength chars are never cached.
+ */
+public final class StringCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    private final int maxEntries;
+    private final int maxLength;
+
+    // the str 8 header of the 2013 specification changes the encoding of
+    // some lengths, so each format has its own entries
+    private final ConcurrentHashMap<String, byte[]> legacy;
+    private final ConcurrentHashMap<String, byte[]> spec2013;
+    private final AtomicInteger size = new AtomicInteger();
+    // set once size reaches maxEntries, so that misses skip put
+    private volatile boolean full;
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+
+    /**
+     * Counter striped by thread id, so that packers on different threads
+     * rarely update the same cache line. Reads sum all stripes.
+     */
+    private static final class StripedCounter {
+        // longs per stripe, keeping stripes on separate cache lines
+        private static final int SPACING = 8;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        StripedCounter() {
+            int n = 1;
+            while (n < Runtime.getRuntime().availableProcessors() * 2) {
+                n <<= 1;
+            }
+            cells = new AtomicLongArray(n * SPACING);
+            mask = n - 1;
+        }
+
+        void increment() {
+            cells.incrementAndGet(((int) Thread.currentThread().getId() & mask) * SPACING);
+        }
+
+        long get() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += SPACING) {
+                sum += cells.get(i);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < cells.length(); i += SPACING) {
+                cells.set(i, 0);
+            }
+        }
+    }
+
+    public StringCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+    }
+
+    public StringCache(int maxEntries, int maxLength) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("maxLength must be positive: " + maxLength);
+        }
+        this.maxEntries = maxEntries;
+        this.maxLength = maxLength;
+        legacy = new ConcurrentHashMap<String, byte[]>();
+        spec2013 = new ConcurrentHashMap<String, byte[]>();
+    }
+
+    /**
+     * Returns the cached encoding of s, or null if s is not cached.
+     */
+    byte[] get(String s, boolean spec2013Enabled) {
+        if (s.length() > maxLength) {
+            return null;
+        }
+        byte[] b = (spec2013Enabled ? spec2013 : legacy).get(s);
+        if (b != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return b;
+    }
+
+    /**
+     * Returns true if s would be cached by {@link #put}. Always false once
+     * the cache is full, so that callers can skip encoding s separately.
+     */
+    boolean accepts(String s) {
+        return !full && s.length() <= maxLength;
+    }
+
+    void put(String s, boolean spec2013Enabled, byte[] encoded) {
+        int n = size.incrementAndGet();
+        if (n > maxEntries) {
+            size.decrementAndGet();
+            full = true;
+            return;
+        }
+        if ((spec2013Enabled ? spec2013 : legacy).putIfAbsent(s, encoded) != null) {
+            size.decrementAndGet();
+        } else if (n == maxEntries) {
+            full = true;
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups of strings no longer than maxLength that
+     * were not cached.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns hits / (hits + misses), or 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        legacy.clear();
+        spec2013.clear();
+        size.set(0);
+        full = false;
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -34,6 +34,7 @@ public class Unconverter extends AbstractPacker {
     // private Value topContainer;
 
     public Unconverter() {
+        // per instance for the same reason as Converter(Value)
         this(new MessagePack());
     }
 
@@ -106,6 +107,11 @@ public class Unconverter extends AbstractPacker {
         put(ValueFactory.createRawValue(s));
     }
 
+    @Override
+    protected void writeExtValue(byte type, byte[] b, int off, int len) throws IOException {
+        put(ValueFactory.createExtValue(type, b, off, len));
+    }
+
     @Override
     public Packer writeNil() throws IOException {
         put(ValueFactory.createNilValue());
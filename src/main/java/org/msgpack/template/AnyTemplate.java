@@ -18,20 +18,61 @@
 package org.msgpack.template;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
+/**
+ * Writes any object with the template registered for its runtime class.
+ * <p>
+ * Templates are cached per class in a first-seen cache: the first class
+ * written occupies the monomorphic slot and the next
+ * {@link #POLYMORPHIC_CACHE_SIZE} distinct classes fill the polymorphic
+ * entries. Entries are never replaced or evicted while the registry is
+ * unchanged, so classes seen after the cache is full are looked up in the
+ * registry on every write. {@link #clearCache()} starts over.
+ */
 public class AnyTemplate<T> extends AbstractTemplate<T> {
 
+    /**
+     * maximum number of classes remembered in addition to the first one.
+     * Targets of other classes are looked up in the registry every time.
+     */
+    static final int POLYMORPHIC_CACHE_SIZE = 8;
+
+    private static final CacheEntry[] EMPTY_CACHE = new CacheEntry[0];
+
+    private static final class CacheEntry {
+        final Class<?> type;
+        final Template<Object> template;
+
+        CacheEntry(Class<?> type, Template<Object> template) {
+            this.type = type;
+            this.template = template;
+        }
+    }
+
     private TemplateRegistry registry;
 
+    private volatile int generation;
+
+    private volatile CacheEntry monomorphic;
+
+    private volatile CacheEntry[] polymorphic = EMPTY_CACHE;
+
+    private volatile boolean statisticsEnabled;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
     public AnyTemplate(TemplateRegistry registry) {
         this.registry = registry;
+        this.generation = registry.getGeneration();
     }
 
-    @SuppressWarnings("unchecked")
     public void write(Packer pk, T target, boolean required) throws IOException {
         if (target == null) {
             if (required) {
@@ -39,8 +80,113 @@ public class AnyTemplate<T> extends AbstractTemplate<T> {
             }
             pk.writeNil();
         } else {
-            registry.lookup(target.getClass()).write(pk, target);
+            lookupTemplate(target.getClass()).write(pk, target);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Template<Object> lookupTemplate(Class<?> type) {
+        if (generation != registry.getGeneration()) {
+            clearCache();
+        }
+
+        CacheEntry e = monomorphic;
+        if (e != null && e.type == type) {
+            if (statisticsEnabled) {
+                hitCount.incrementAndGet();
+            }
+            return e.template;
+        }
+        CacheEntry[] entries = polymorphic;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].type == type) {
+                if (statisticsEnabled) {
+                    hitCount.incrementAndGet();
+                }
+                return entries[i].template;
+            }
         }
+
+        if (statisticsEnabled) {
+            missCount.incrementAndGet();
+        }
+        Template<Object> tmpl = registry.lookup(type);
+        if (TemplateRegistry.isUnloadable(type)) {
+            // must not keep the class loader of the type alive
+            return tmpl;
+        }
+        e = new CacheEntry(type, tmpl);
+        synchronized (this) {
+            // another thread may have cached it in the meantime
+            if (!isCached(type)) {
+                if (monomorphic == null) {
+                    monomorphic = e;
+                } else if (polymorphic.length < POLYMORPHIC_CACHE_SIZE) {
+                    CacheEntry[] newEntries = new CacheEntry[polymorphic.length + 1];
+                    System.arraycopy(polymorphic, 0, newEntries, 0, polymorphic.length);
+                    newEntries[polymorphic.length] = e;
+                    polymorphic = newEntries;
+                }
+            }
+        }
+        return tmpl;
+    }
+
+    private boolean isCached(Class<?> type) {
+        if (monomorphic != null && monomorphic.type == type) {
+            return true;
+        }
+        for (CacheEntry e : polymorphic) {
+            if (e.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the templates cached for the classes written so far.
+     */
+    public synchronized void clearCache() {
+        generation = registry.getGeneration();
+        monomorphic = null;
+        polymorphic = EMPTY_CACHE;
+    }
+
+    /**
+     * Enables or disables the hit and miss counters. They are disabled by
+     * default because this template is shared by every thread writing
+     * through the registry.
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        statisticsEnabled = enabled;
+    }
+
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Returns how many writes found the template of the target's class in
+     * the cache of this template while statistics were enabled.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns how many writes had to look up the template in the registry
+     * while statistics were enabled.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of classes whose templates are currently cached.
+     */
+    public int getCachedTypeCount() {
+        return (monomorphic != null ? 1 : 0) + polymorphic.length;
     }
 
     public T read(Unpacker u, T to, boolean required) throws IOException,
@@ -35,11 +35,7 @@ public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
             pk.writeNil();
             return;
         }
-        pk.writeArrayBegin(target.length);
-        for (double a : target) {
-            pk.write(a);
-        }
-        pk.writeArrayEnd();
+        pk.writeArray(target, 0, target.length);
     }
 
     public double[] read(Unpacker u, double[] to, boolean required)
@@ -47,15 +43,7 @@ public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
-        int n = u.readArrayBegin();
-        if (to == null || to.length != n) {
-            to = new double[n];
-        }
-        for (int i = 0; i < n; i++) {
-            to[i] = u.readDouble();
-        }
-        u.readArrayEnd();
-        return to;
+        return u.readArray(to);
     }
 
     static public DoubleArrayTemplate getInstance() {
@@ -35,11 +35,7 @@ public class LongArrayTemplate extends AbstractTemplate<long[]> {
             pk.writeNil();
             return;
         }
-        pk.writeArrayBegin(target.length);
-        for (long a : target) {
-            pk.write(a);
-        }
-        pk.writeArrayEnd();
+        pk.writeArray(target, 0, target.length);
     }
 
     public long[] read(Unpacker u, long[] to, boolean required)
@@ -47,15 +43,7 @@ public class LongArrayTemplate extends AbstractTemplate<long[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
-        int n = u.readArrayBegin();
-        if (to == null || to.length != n) {
-            to = new long[n];
-        }
-        for (int i = 0; i < n; i++) {
-            to[i] = u.readLong();
-        }
-        u.readArrayEnd();
-        return to;
+        return u.readArray(to);
     }
 
     static public LongArrayTemplate getInstance() {
@@ -40,7 +40,7 @@ public class TemplateReference<T> extends AbstractTemplate<T> {
     @SuppressWarnings("unchecked")
     private void validateActualTemplate() {
         if (actualTemplate == null) {
-            actualTemplate = (Template<T>) registry.cache.get(targetType);
+            actualTemplate = (Template<T>) registry.getBuiltTemplate(targetType);
             if (actualTemplate == null) {
                 throw new MessageTypeException(
                         "Actual template have not been created");
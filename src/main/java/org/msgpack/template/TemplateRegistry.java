@@ -23,7 +23,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.WeakHashMap;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -53,22 +60,85 @@ import org.msgpack.template.ShortArrayTemplate;
 import org.msgpack.template.ShortTemplate;
 import org.msgpack.template.StringTemplate;
 import org.msgpack.template.Template;
+import org.msgpack.template.RawMessageTemplate;
 import org.msgpack.template.ValueTemplate;
 import org.msgpack.template.builder.ArrayTemplateBuilder;
 import org.msgpack.template.builder.TemplateBuilder;
 import org.msgpack.template.builder.TemplateBuilderChain;
+import org.msgpack.type.RawMessage;
 import org.msgpack.type.Value;
 
+/**
+ * Looks up, builds and caches the templates of types.
+ * <p>
+ * Templates of classes defined by other class loaders than the one of
+ * msgpack are cached per loader through a {@link SoftReference}. Such a
+ * cache does not keep its loader alive, but it is only cleared when the
+ * garbage collector needs memory, so an unused loader and its classes can
+ * stay loaded until then. Clearing also drops the templates of loaders
+ * still in use, which are then rebuilt on their next lookup.
+ */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class TemplateRegistry {
 
     private TemplateRegistry parent = null;
 
-    private TemplateBuilderChain chain;
+    private volatile TemplateBuilderChain chain;
 
-    Map<Type, Template<Type>> cache;
+    volatile Map<Type, Template<Type>> cache;
 
-    private Map<Type, GenericTemplate> genericCache;
+    private volatile Map<Type, GenericTemplate> genericCache;
+
+    /**
+     * templates of parameterized types, keyed by the full generic type
+     * (e.g. <code>List&lt;String&gt;</code>), built from genericCache.
+     */
+    private final Map<Type, Template<Type>> parameterizedCache =
+            new ConcurrentHashMap<Type, Template<Type>>();
+
+    /**
+     * templates built for classes of other class loaders than the one of
+     * msgpack (see {@link #isUnloadable(Type)}). They are weakly keyed by the
+     * loader and softly referenced, so that neither keeps the loader alive
+     * after the classes are no longer used.
+     */
+    private final Map<ClassLoader, SoftReference<Map<Type, Template<Type>>>> unloadableCache =
+            new WeakHashMap<ClassLoader, SoftReference<Map<Type, Template<Type>>>>();
+
+    private volatile boolean frozen = false;
+
+    /**
+     * incremented whenever templates are explicitly (un)registered, so that
+     * templates which cache lookup results can tell that they are stale.
+     */
+    private volatile int generation = 0;
+
+    /**
+     * templates that are being built right now. A thread that misses the
+     * cache waits for the future of another thread instead of building the
+     * same template twice.
+     */
+    private final ConcurrentMap<Type, FutureTask<Template>> inFlight =
+            new ConcurrentHashMap<Type, FutureTask<Template>>();
+
+    /**
+     * nesting depth of template builds that run on the current thread.
+     */
+    private final ThreadLocal<int[]> buildDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * the root registry of built-in templates. It is frozen after the
+     * templates are registered, so that it is shared by all registries
+     * created with <code>new TemplateRegistry(null)</code>.
+     */
+    private static class RootHolder {
+        static final TemplateRegistry ROOT = new TemplateRegistry();
+    }
 
     /**
      * create <code>TemplateRegistry</code> object of root.
@@ -76,10 +146,10 @@ public class TemplateRegistry {
     private TemplateRegistry() {
         parent = null;
         chain = createTemplateBuilderChain();
-        genericCache = new HashMap<Type, GenericTemplate>();
-        cache = new HashMap<Type, Template<Type>>();
+        genericCache = new ConcurrentHashMap<Type, GenericTemplate>();
+        cache = new ConcurrentHashMap<Type, Template<Type>>();
         registerTemplates();
-        cache = Collections.unmodifiableMap(cache);
+        freeze();
     }
 
     /**
@@ -90,11 +160,11 @@ public class TemplateRegistry {
         if (registry != null) {
             parent = registry;
         } else {
-            parent = new TemplateRegistry();
+            parent = RootHolder.ROOT;
         }
         chain = createTemplateBuilderChain();
-        cache = new HashMap<Type, Template<Type>>();
-        genericCache = new HashMap<Type, GenericTemplate>();
+        cache = new ConcurrentHashMap<Type, Template<Type>>();
+        genericCache = new ConcurrentHashMap<Type, GenericTemplate>();
         registerTemplatesWhichRefersRegistry();
     }
 
@@ -134,6 +204,7 @@ public class TemplateRegistry {
         register(byte[].class, ByteArrayTemplate.getInstance());
         register(ByteBuffer.class, ByteBufferTemplate.getInstance());
         register(Value.class, ValueTemplate.getInstance());
+        register(RawMessage.class, RawMessageTemplate.getInstance());
         register(BigDecimal.class, BigDecimalTemplate.getInstance());
         register(Date.class, DateTemplate.getInstance());
 
@@ -166,11 +237,16 @@ public class TemplateRegistry {
         buildAndRegister(null, targetClass, false, flist);
     }
 
-    public synchronized void register(final Type targetType, final Template tmpl) {
+    public void register(final Type targetType, final Template tmpl) {
         if (tmpl == null) {
             throw new NullPointerException("Template object is null");
         }
+        checkNotFrozen();
+        putTemplate(targetType, tmpl);
+        invalidateLookupCaches();
+    }
 
+    private void putTemplate(final Type targetType, final Template tmpl) {
         if (targetType instanceof ParameterizedType) {
             cache.put(((ParameterizedType) targetType).getRawType(), tmpl);
         } else {
@@ -178,32 +254,180 @@ public class TemplateRegistry {
         }
     }
 
-    public synchronized void registerGeneric(final Type targetType, final GenericTemplate tmpl) {
+    public void registerGeneric(final Type targetType, final GenericTemplate tmpl) {
+        checkNotFrozen();
+
         if (targetType instanceof ParameterizedType) {
             genericCache.put(((ParameterizedType) targetType).getRawType(),
                     tmpl);
         } else {
             genericCache.put(targetType, tmpl);
         }
+        invalidateLookupCaches();
     }
 
-    public synchronized boolean unregister(final Type targetType) {
-        Template<Type> tmpl = cache.remove(targetType);
+    public boolean unregister(final Type targetType) {
+        checkNotFrozen();
+        Template<Type> tmpl = removeTemplate(targetType);
+        invalidateLookupCaches();
         return tmpl != null;
     }
 
-    public synchronized void unregister() {
+    public void unregister() {
+        checkNotFrozen();
         cache.clear();
+        synchronized (unloadableCache) {
+            unloadableCache.clear();
+        }
+        invalidateLookupCaches();
+    }
+
+    private void invalidateLookupCaches() {
+        parameterizedCache.clear();
+        generation++;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Takes an immutable snapshot of the registered templates. After freezing,
+     * lookups of known types are served from the snapshot, while registering,
+     * unregistering and building templates of new types are rejected.
+     * Templates that are being built concurrently with this call may not be
+     * included in the snapshot.
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        genericCache = Collections.unmodifiableMap(
+                new HashMap<Type, GenericTemplate>(genericCache));
+        cache = Collections.unmodifiableMap(
+                new HashMap<Type, Template<Type>>(cache));
+        frozen = true;
     }
 
-    public synchronized Template lookup(Type targetType) {
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("TemplateRegistry is frozen");
+        }
+    }
+
+    /**
+     * caches a template that has been found by a lookup. Frozen registries
+     * simply do not remember it.
+     */
+    private void cacheTemplate(final Type targetType, final Template tmpl) {
+        if (!frozen) {
+            putBuiltTemplate(targetType, tmpl);
+        }
+    }
+
+    /**
+     * returns true if the type refers to a class of a class loader other
+     * than the one of msgpack and its ancestors, e.g. a class of a module
+     * that may be redeployed. Templates of such types are not kept strongly,
+     * unless they are registered explicitly.
+     */
+    static boolean isUnloadable(final Type targetType) {
+        if (targetType instanceof Class) {
+            ClassLoader cl = ((Class<?>) targetType).getClassLoader();
+            if (cl == null) {
+                return false;
+            }
+            for (ClassLoader l = TemplateRegistry.class.getClassLoader(); l != null; l = l.getParent()) {
+                if (l == cl) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (targetType instanceof ParameterizedType) {
+            ParameterizedType paramedType = (ParameterizedType) targetType;
+            if (isUnloadable(paramedType.getRawType())) {
+                return true;
+            }
+            for (Type t : paramedType.getActualTypeArguments()) {
+                if (isUnloadable(t)) {
+                    return true;
+                }
+            }
+        } else if (targetType instanceof GenericArrayType) {
+            return isUnloadable(((GenericArrayType) targetType).getGenericComponentType());
+        }
+        return false;
+    }
+
+    private Map<Type, Template<Type>> getUnloadableTemplates(final Class<?> targetClass,
+            final boolean create) {
+        ClassLoader cl = targetClass.getClassLoader();
+        synchronized (unloadableCache) {
+            SoftReference<Map<Type, Template<Type>>> ref = unloadableCache.get(cl);
+            Map<Type, Template<Type>> tmpls = ref != null ? ref.get() : null;
+            if (tmpls == null && create) {
+                tmpls = new ConcurrentHashMap<Type, Template<Type>>();
+                unloadableCache.put(cl, new SoftReference<Map<Type, Template<Type>>>(tmpls));
+            }
+            return tmpls;
+        }
+    }
+
+    private Template<Type> getTemplate(final Type targetType) {
+        Template<Type> tmpl = cache.get(targetType);
+        if (tmpl == null && targetType instanceof Class && isUnloadable(targetType)) {
+            Map<Type, Template<Type>> tmpls = getUnloadableTemplates((Class<?>) targetType, false);
+            if (tmpls != null) {
+                tmpl = tmpls.get(targetType);
+            }
+        }
+        return tmpl;
+    }
+
+    /**
+     * stores a template that can be built again if it is lost.
+     */
+    private void putBuiltTemplate(final Type targetType, final Template tmpl) {
+        if (targetType instanceof Class && isUnloadable(targetType)) {
+            getUnloadableTemplates((Class<?>) targetType, true).put(targetType, tmpl);
+        } else {
+            putTemplate(targetType, tmpl);
+        }
+    }
+
+    private Template<Type> removeTemplate(final Type targetType) {
+        Template<Type> tmpl = cache.remove(targetType);
+        if (targetType instanceof Class && isUnloadable(targetType)) {
+            Map<Type, Template<Type>> tmpls = getUnloadableTemplates((Class<?>) targetType, false);
+            if (tmpls != null) {
+                Template<Type> t = tmpls.remove(targetType);
+                if (tmpl == null) {
+                    tmpl = t;
+                }
+            }
+        }
+        return tmpl;
+    }
+
+    public Template lookup(Type targetType) {
         Template tmpl;
 
         if (targetType instanceof ParameterizedType) {
             // ParameterizedType is not a Class<?>
             ParameterizedType paramedType = (ParameterizedType) targetType;
+            tmpl = parameterizedCache.get(paramedType);
+            if (tmpl != null) {
+                return tmpl;
+            }
             tmpl = lookupGenericType(paramedType);
             if (tmpl != null) {
+                if (!isUnloadable(paramedType)) {
+                    parameterizedCache.put(paramedType, tmpl);
+                }
                 return tmpl;
             }
             targetType = paramedType.getRawType();
@@ -223,7 +447,7 @@ public class TemplateRegistry {
                 targetType instanceof TypeVariable) {
             // WildcardType is not a Class<?>
             tmpl = new AnyTemplate<Object>(this);
-            register(targetType, tmpl);
+            cacheTemplate(targetType, tmpl);
             return tmpl;
         }
 
@@ -235,7 +459,7 @@ public class TemplateRegistry {
             // following processing should be merged into lookAfterBuilding
             // or lookupInterfaceTypes method in next version
             tmpl = new MessagePackableTemplate(targetClass);
-            register(targetClass, tmpl);
+            cacheTemplate(targetClass, tmpl);
             return tmpl;
         }
 
@@ -243,7 +467,7 @@ public class TemplateRegistry {
             // writing interfaces will succeed
             // reading into interfaces will fail
             tmpl = new AnyTemplate<Object>(this);
-            register(targetType, tmpl);
+            cacheTemplate(targetType, tmpl);
             return tmpl;
         }
 
@@ -354,7 +578,7 @@ public class TemplateRegistry {
             for (; superClass != Object.class; superClass = superClass.getSuperclass()) {
                 tmpl = lookupGenericTypeImpl0(targetType, superClass);
                 if (tmpl != null) {
-                    register(targetType, tmpl);
+                    cacheTemplate(targetType, tmpl);
                     return tmpl;
                 }
             }
@@ -447,7 +671,7 @@ public class TemplateRegistry {
     }
 
     private Template<Type> lookupCache(Type targetType) {
-        Template<Type> tmpl = cache.get(targetType);
+        Template<Type> tmpl = getTemplate(targetType);
         if (tmpl != null) {
             return tmpl;
         }
@@ -466,7 +690,7 @@ public class TemplateRegistry {
             // TODO #MN for Android, we should modify here
             tmpl = chain.getForceBuilder().loadTemplate(targetClass);
             if (tmpl != null) {
-                register(targetClass, tmpl);
+                cacheTemplate(targetClass, tmpl);
                 return tmpl;
             }
             tmpl = buildAndRegister(builder, targetClass, true, null);
@@ -478,15 +702,15 @@ public class TemplateRegistry {
         Class<?>[] infTypes = targetClass.getInterfaces();
         Template<T> tmpl = null;
         for (Class<?> infType : infTypes) {
-            tmpl = (Template<T>) cache.get(infType);
+            tmpl = (Template<T>) getTemplate(infType);
             if (tmpl != null) {
-                register(targetClass, tmpl);
+                cacheTemplate(targetClass, tmpl);
                 return tmpl;
             } else {
                 try {
                     tmpl = (Template<T>) parent.lookupCache(infType);
                     if (tmpl != null) {
-                        register(targetClass, tmpl);
+                        cacheTemplate(targetClass, tmpl);
                         return tmpl;
                     }
                 } catch (NullPointerException e) { // ignore
@@ -502,15 +726,15 @@ public class TemplateRegistry {
         if (superClass != null) {
             for (; superClass != Object.class; superClass = superClass
                     .getSuperclass()) {
-                tmpl = (Template<T>) cache.get(superClass);
+                tmpl = (Template<T>) getTemplate(superClass);
                 if (tmpl != null) {
-                    register(targetClass, tmpl);
+                    cacheTemplate(targetClass, tmpl);
                     return tmpl;
                 } else {
                     try {
                         tmpl = (Template<T>) parent.lookupCache(superClass);
                         if (tmpl != null) {
-                            register(targetClass, tmpl);
+                            cacheTemplate(targetClass, tmpl);
                             return tmpl;
                         }
                     } catch (NullPointerException e) { // ignore
@@ -528,13 +752,13 @@ public class TemplateRegistry {
             for (; superClass != Object.class; superClass = superClass.getSuperclass()) {
                 tmpl = (Template<T>) lookupInterfaceTypes(superClass);
                 if (tmpl != null) {
-                    register(targetClass, tmpl);
+                    cacheTemplate(targetClass, tmpl);
                     return tmpl;
                 } else {
                     try {
                         tmpl = (Template<T>) parent.lookupCache(superClass);
                         if (tmpl != null) {
-                            register(targetClass, tmpl);
+                            cacheTemplate(targetClass, tmpl);
                             return tmpl;
                         }
                     } catch (NullPointerException e) { // ignore
@@ -545,38 +769,133 @@ public class TemplateRegistry {
         return tmpl;
     }
 
-    private synchronized Template buildAndRegister(TemplateBuilder builder,
+    /**
+     * returns the template of the type if it has been built or waits for a
+     * build of it that is in progress on another thread.
+     */
+    Template<Type> getBuiltTemplate(final Type targetType) {
+        Template<Type> tmpl = getTemplate(targetType);
+        if (tmpl == null) {
+            FutureTask<Template> running = inFlight.get(targetType);
+            if (running != null && !isBuilding()) {
+                tmpl = awaitBuild(running);
+            }
+        }
+        return tmpl;
+    }
+
+    private boolean isBuilding() {
+        return buildDepth.get()[0] > 0;
+    }
+
+    private Template buildAndRegister(final TemplateBuilder builder,
             final Class targetClass, final boolean hasAnnotation,
             final FieldList flist) {
-        Template newTmpl = null;
+        if (frozen) {
+            throw new MessageTypeException(
+                    "Cannot build template for " + targetClass + " class: TemplateRegistry is frozen");
+        }
+
+        // explicit registration (builder == null) always builds a new template
+        final boolean rebuild = builder == null;
+        if (rebuild) {
+            invalidateLookupCaches();
+        }
+        while (true) {
+            FutureTask<Template> task = new FutureTask<Template>(new Callable<Template>() {
+                public Template call() {
+                    return build(builder, targetClass, hasAnnotation, flist, rebuild);
+                }
+            });
+            FutureTask<Template> running = inFlight.putIfAbsent(targetClass, task);
+            if (running == null) {
+                try {
+                    task.run();
+                    return awaitBuild(task);
+                } finally {
+                    inFlight.remove(targetClass, task);
+                }
+            }
+
+            if (isBuilding()) {
+                // the type refers itself, or is built by another thread that
+                // might be waiting for the template this thread is building.
+                // the reference is resolved lazily when it is used.
+                return new TemplateReference(this, targetClass);
+            }
+
+            Template tmpl = awaitBuild(running);
+            if (!rebuild) {
+                return tmpl;
+            }
+        }
+    }
+
+    private Template build(TemplateBuilder builder, final Class targetClass,
+            final boolean hasAnnotation, final FieldList flist, final boolean rebuild) {
         Template oldTmpl = null;
-        try {
-            if (cache.containsKey(targetClass)) {
-                oldTmpl = cache.get(targetClass);
+        if (rebuild) {
+            oldTmpl = removeTemplate(targetClass);
+        } else {
+            // another thread may have finished the build since the cache was missed
+            Template tmpl = getTemplate(targetClass);
+            if (tmpl != null) {
+                return tmpl;
             }
-            newTmpl = new TemplateReference(this, targetClass);
-            cache.put(targetClass, newTmpl);
+        }
+
+        int[] depth = buildDepth.get();
+        depth[0]++;
+        try {
             if (builder == null) {
                 builder = chain.select(targetClass, hasAnnotation);
             }
-            newTmpl = flist != null ?
-                    builder.buildTemplate(targetClass, flist) : builder.buildTemplate(targetClass);
+            Template newTmpl;
+            if (flist != null) {
+                // the field list cannot be recovered, so the template is kept
+                newTmpl = builder.buildTemplate(targetClass, flist);
+                cache.put(targetClass, newTmpl);
+            } else {
+                newTmpl = builder.buildTemplate(targetClass);
+                putBuiltTemplate(targetClass, newTmpl);
+            }
             return newTmpl;
         } catch (Exception e) {
             if (oldTmpl != null) {
                 cache.put(targetClass, oldTmpl);
-            } else {
-                cache.remove(targetClass);
             }
-            newTmpl = null;
             if (e instanceof MessageTypeException) {
                 throw (MessageTypeException) e;
             } else {
                 throw new MessageTypeException(e);
             }
         } finally {
-            if (newTmpl != null) {
-                cache.put(targetClass, newTmpl);
+            depth[0]--;
+        }
+    }
+
+    private static Template awaitBuild(FutureTask<Template> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new MessageTypeException(cause);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
         }
     }
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.math.BigInteger;
 import java.math.BigDecimal;
+import org.msgpack.type.RawMessage;
 import org.msgpack.type.Value;
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -58,6 +59,8 @@ public final class Templates {
 
     public static final Template<Date> TDate = DateTemplate.getInstance();
 
+    public static final Template<RawMessage> TRawMessage = RawMessageTemplate.getInstance();
+
     public static <T> Template<T> tNotNullable(Template<T> innerTemplate) {
         return new NotNullableTemplate(innerTemplate);
     }
@@ -0,0 +1,174 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.template.builder;
+
+import java.io.IOException;
+
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.Packer;
+import org.msgpack.template.AbstractTemplate;
+import org.msgpack.template.Template;
+import org.msgpack.template.TemplateRegistry;
+import org.msgpack.unpacker.Unpacker;
+
+/**
+ * Base class of templates generated by
+ * {@link org.msgpack.util.TemplateAnnotationProcessor} at compile time.
+ * 
+ * The layout of a message is decided at runtime from the field entries, by
+ * the same rules as the other template builders. Generated subclasses access
+ * the members they know directly through <code>writeMember</code> and
+ * <code>readMember</code>; other members fall back to reflection.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public abstract class AbstractGeneratedTemplate<T> extends AbstractTemplate<T> {
+
+    protected Class<T> targetClass;
+
+    protected FieldEntry[] entries;
+
+    protected Template[] templates;
+
+    private int[] members;
+
+    private ReflectionTemplateBuilder.ReflectionFieldTemplate[] fallbacks;
+
+    /**
+     * @param memberKeys
+     *            members that the subclass accesses directly. The index in
+     *            this array is passed to writeMember and readMember.
+     */
+    protected AbstractGeneratedTemplate(TemplateRegistry registry, Class<T> targetClass,
+            FieldEntry[] entries, String[] memberKeys) {
+        this.targetClass = targetClass;
+        this.entries = entries;
+        this.templates = new Template[entries.length];
+        this.members = new int[entries.length];
+        this.fallbacks = new ReflectionTemplateBuilder.ReflectionFieldTemplate[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            FieldEntry e = entries[i];
+            members[i] = -1;
+            if (!e.isAvailable()) {
+                continue;
+            }
+            templates[i] = registry.lookup(e.getGenericType());
+            members[i] = indexOf(memberKeys, getMemberKey(e));
+            if (members[i] < 0) {
+                ReflectionTemplateBuilder builder = e instanceof BeansFieldEntry ?
+                        new ReflectionBeansTemplateBuilder(registry) : new ReflectionTemplateBuilder(registry);
+                fallbacks[i] = builder.toTemplate(e, builder.createFieldAccessor(e));
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the member of an entry: <code>declaring class
+     * name#field name</code> for fields, and the property name for bean
+     * properties.
+     */
+    public static String getMemberKey(FieldEntry e) {
+        if (e instanceof DefaultFieldEntry) {
+            java.lang.reflect.Field f = ((DefaultFieldEntry) e).getField();
+            return f.getDeclaringClass().getName() + "#" + f.getName();
+        }
+        return e.getName();
+    }
+
+    private static int indexOf(String[] keys, String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected abstract T newInstance();
+
+    protected abstract void writeMember(Packer pk, T v, int member, int index)
+            throws IOException;
+
+    protected abstract void readMember(Unpacker u, T to, int member, int index)
+            throws IOException;
+
+    /**
+     * writes a reference type value of the entry at the index.
+     */
+    protected final void writeValue(Packer pk, Object value, int index) throws IOException {
+        if (value == null) {
+            if (entries[index].isNotNullable()) {
+                throw new MessageTypeException(entries[index].getName()
+                        + " cannot be null by @NotNullable");
+            }
+            pk.writeNil();
+        } else {
+            templates[index].write(pk, value);
+        }
+    }
+
+    /**
+     * reads a reference type value of the entry at the index.
+     */
+    protected final Object readValue(Unpacker u, Object to, int index) throws IOException {
+        return templates[index].read(u, to);
+    }
+
+    public void write(Packer pk, T v, boolean required) throws IOException {
+        if (v == null) {
+            if (required) {
+                throw new MessageTypeException("Attempted to write null");
+            }
+            pk.writeNil();
+            return;
+        }
+        pk.writeArrayBegin(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            if (!entries[i].isAvailable()) {
+                pk.writeNil();
+            } else if (members[i] >= 0) {
+                writeMember(pk, v, members[i], i);
+            } else {
+                fallbacks[i].writeField(pk, v);
+            }
+        }
+        pk.writeArrayEnd();
+    }
+
+    public T read(Unpacker u, T to, boolean required) throws IOException {
+        if (!required && u.trySkipNil()) {
+            return null;
+        }
+        if (to == null) {
+            to = newInstance();
+        }
+        u.readArrayBegin();
+        for (int i = 0; i < entries.length; i++) {
+            if (!entries[i].isAvailable()) {
+                u.skip();
+            } else if (entries[i].isOptional() && u.trySkipNil()) {
+                // if Optional and nil, then keep default value
+            } else if (members[i] >= 0) {
+                readMember(u, to, members[i], i);
+            } else {
+                fallbacks[i].readField(u, to);
+            }
+        }
+        u.readArrayEnd();
+        return to;
+    }
+}
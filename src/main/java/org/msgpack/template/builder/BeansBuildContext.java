@@ -78,6 +78,11 @@ public class BeansBuildContext extends BuildContext<BeansFieldEntry> {
     protected void buildMethodInit() {
     }
 
+    @Override
+    protected ClassLoader getTargetClassLoader() {
+        return origClass.getClassLoader();
+    }
+
     @Override
     protected String buildWriteMethodBody() {
         resetStringBuilder();
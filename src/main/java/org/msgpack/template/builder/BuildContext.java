@@ -151,7 +151,33 @@ public abstract class BuildContext<T extends FieldEntry> {
     protected abstract String buildReadMethodBody();
 
     protected Class<?> createClass() throws CannotCompileException {
-        return (Class<?>) tmplCtClass.toClass(null, getClass().getProtectionDomain());
+        // the template is defined by the loader of the target class if it can
+        // see msgpack, so that both can be unloaded together
+        ClassLoader cl = getTargetClassLoader();
+        if (cl != null && !isVisible(JavassistTemplateBuilder.JavassistTemplate.class, cl)) {
+            cl = null;
+        }
+        try {
+            return (Class<?>) tmplCtClass.toClass(cl, getClass().getProtectionDomain());
+        } finally {
+            tmplCtClass.detach();
+        }
+    }
+
+    /**
+     * returns the class loader of the target class, or null to define the
+     * template by the context class loader.
+     */
+    protected ClassLoader getTargetClassLoader() {
+        return null;
+    }
+
+    private static boolean isVisible(Class<?> c, ClassLoader cl) {
+        try {
+            return Class.forName(c.getName(), false, cl) == c;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
     }
 
     protected void saveClass(final String directoryName) throws CannotCompileException, IOException {
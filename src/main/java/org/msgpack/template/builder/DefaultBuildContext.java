@@ -30,6 +30,7 @@ import org.msgpack.unpacker.Unpacker;
 import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.CtConstructor;
+import javassist.CtField;
 import javassist.CtNewConstructor;
 import javassist.NotFoundException;
 
@@ -64,14 +65,44 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
     protected void buildConstructor() throws CannotCompileException,
             NotFoundException {
         // Constructor(Class targetClass, Template[] templates)
+        // private fields are looked up once here and kept in instance fields
+        StringBuilder body = new StringBuilder();
+        body.append("{ super($1, $2);");
+        for (int i = 0; i < entries.length; i++) {
+            if (!isPrivateField(entries[i])) {
+                continue;
+            }
+            Field f = ((DefaultFieldEntry) entries[i]).getField();
+            tmplCtClass.addField(CtField.make(String.format(
+                    "private %s %s;", Field.class.getName(), privateFieldName(i)), tmplCtClass));
+            body.append(String.format(" %s = %s.getAccessibleField(%s.class, \"%s\");",
+                    privateFieldName(i), DefaultBuildContext.class.getName(),
+                    f.getDeclaringClass().getName(), f.getName()));
+        }
+        body.append(" }");
         CtConstructor newCtCons = CtNewConstructor.make(
                 new CtClass[] {
                         director.getCtClass(Class.class.getName()),
                         director.getCtClass(Template.class.getName() + "[]")
-                }, new CtClass[0], tmplCtClass);
+                }, new CtClass[0], body.toString(), tmplCtClass);
         tmplCtClass.addConstructor(newCtCons);
     }
 
+    private static boolean isPrivateField(FieldEntry e) {
+        return e.isAvailable()
+                && Modifier.isPrivate(((DefaultFieldEntry) e).getField().getModifiers());
+    }
+
+    private static String privateFieldName(int i) {
+        return "_$$_f" + i;
+    }
+
+    private static String primitiveFieldAccessorName(String prefix, Class<?> type) {
+        // e.g. getInt, setLong
+        String name = type.getName();
+        return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
     protected Template buildInstance(Class<?> c) throws NoSuchMethodException,
             InstantiationException, IllegalAccessException,
             InvocationTargetException {
@@ -83,6 +114,11 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
     protected void buildMethodInit() {
     }
 
+    @Override
+    protected ClassLoader getTargetClassLoader() {
+        return origClass.getClassLoader();
+    }
+
     protected String buildWriteMethodBody() {
         resetStringBuilder();
         buildString("\n{\n");
@@ -105,24 +141,25 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
                 continue;
             }
             DefaultFieldEntry de = (DefaultFieldEntry) e;
-            boolean isPrivate = Modifier.isPrivate(de.getField().getModifiers());
+            boolean isPrivate = isPrivateField(de);
             Class<?> type = de.getType();
             if (type.isPrimitive()) { // primitive types
                 if (!isPrivate) {
                     buildString("  $1.%s(_$$_t.%s);\n", primitiveWriteName(type), de.getName());
                 } else {
-                    buildString(
-                            "  %s.writePrivateField($1, _$$_t, %s.class, \"%s\", templates[%d]);\n",
-                            DefaultBuildContext.class.getName(), de.getField().getDeclaringClass().getName(), de.getName(), i);
+                    buildString("  $1.%s(%s.%s(_$$_t));\n", primitiveWriteName(type),
+                            privateFieldName(i), primitiveFieldAccessorName("get", type));
                 }
             } else { // reference types
+                String value;
                 if (!isPrivate) {
-                    buildString("  if (_$$_t.%s == null) {\n", de.getName());
+                    value = "_$$_t." + de.getName();
                 } else {
-                    buildString(
-                            "  if (%s.readPrivateField(_$$_t, %s.class, \"%s\") == null) {\n",
-                            DefaultBuildContext.class.getName(), de.getField().getDeclaringClass().getName(), de.getName());
+                    value = "_$$_v" + i;
+                    buildString("  %s %s = %s.get(_$$_t);\n",
+                            Object.class.getName(), value, privateFieldName(i));
                 }
+                buildString("  if (%s == null) {\n", value);
                 if (de.isNotNullable()) {
                     buildString(
                             "    throw new %s(\"%s cannot be null by @NotNullable\");\n",
@@ -131,13 +168,7 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
                     buildString("    $1.writeNil();\n");
                 }
                 buildString("  } else {\n");
-                if (!isPrivate) {
-                    buildString("    templates[%d].write($1, _$$_t.%s);\n", i, de.getName());
-                } else {
-                    buildString(
-                            "    %s.writePrivateField($1, _$$_t, %s.class, \"%s\", templates[%d]);\n",
-                            DefaultBuildContext.class.getName(), de.getField().getDeclaringClass().getName(), de.getName(), i);
-                }
+                buildString("    templates[%d].write($1, %s);\n", i, value);
                 buildString("  }\n");
             }
         }
@@ -147,6 +178,18 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
         return getBuiltString();
     }
 
+    public static Field getAccessibleField(Class targetClass, String fieldName) {
+        try {
+            Field field = targetClass.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            throw new MessageTypeException(e);
+        }
+    }
+
+    // readPrivateField and writePrivateField are called by templates
+    // precompiled by older versions
     public static Object readPrivateField(Object target, Class targetClass, String fieldName) {
         Field field = null;
         try {
@@ -211,15 +254,15 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
             }
 
             DefaultFieldEntry de = (DefaultFieldEntry) e;
-            boolean isPrivate = Modifier.isPrivate(de.getField().getModifiers());
+            boolean isPrivate = isPrivateField(de);
             Class<?> type = de.getType();
             if (type.isPrimitive()) {
                 if (!isPrivate) {
                     buildString("    _$$_t.%s = $1.%s();\n", de.getName(), primitiveReadName(type));
                 } else {
-                    buildString(
-                            "    %s.readPrivateField($1, _$$_t, %s.class, \"%s\", templates[%d]);\n",
-                            DefaultBuildContext.class.getName(), de.getField().getDeclaringClass().getName(), de.getName(), i);
+                    buildString("    %s.%s(_$$_t, (%s) $1.%s());\n",
+                            privateFieldName(i), primitiveFieldAccessorName("set", type),
+                            type.getName(), primitiveReadName(type));
                 }
             } else {
                 if (!isPrivate) {
@@ -228,8 +271,8 @@ public class DefaultBuildContext extends BuildContext<FieldEntry> {
                             de.getName(), de.getJavaTypeName(), i, de.getName());
                 } else {
                     buildString(
-                            "    %s.readPrivateField($1, _$$_t, %s.class, \"%s\", templates[%d]);\n",
-                            DefaultBuildContext.class.getName(), de.getField().getDeclaringClass().getName(), de.getName(), i);
+                            "    %s.set(_$$_t, this.templates[%d].read($1, %s.get(_$$_t)));\n",
+                            privateFieldName(i), i, privateFieldName(i));
                 }
             }
 
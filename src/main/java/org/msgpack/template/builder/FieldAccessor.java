@@ -0,0 +1,108 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.template.builder;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes a field or property of target objects. Primitive values
+ * can be accessed through the typed methods, which implementations may
+ * provide without boxing.
+ */
+public abstract class FieldAccessor {
+
+    /**
+     * Returns the fastest accessor available on this runtime for the field.
+     */
+    public static FieldAccessor create(Field field) {
+        if (UnsafeFieldAccessor.isAvailable()
+                && !Modifier.isVolatile(field.getModifiers())) {
+            return new UnsafeFieldAccessor(field);
+        }
+        return new ReflectionFieldAccessor(field);
+    }
+
+    public abstract Object get(Object target);
+
+    public abstract void set(Object target, Object value);
+
+    public boolean getBoolean(Object target) {
+        return (Boolean) get(target);
+    }
+
+    public void setBoolean(Object target, boolean value) {
+        set(target, value);
+    }
+
+    public byte getByte(Object target) {
+        return (Byte) get(target);
+    }
+
+    public void setByte(Object target, byte value) {
+        set(target, value);
+    }
+
+    public short getShort(Object target) {
+        return (Short) get(target);
+    }
+
+    public void setShort(Object target, short value) {
+        set(target, value);
+    }
+
+    public int getInt(Object target) {
+        return (Integer) get(target);
+    }
+
+    public void setInt(Object target, int value) {
+        set(target, value);
+    }
+
+    public long getLong(Object target) {
+        return (Long) get(target);
+    }
+
+    public void setLong(Object target, long value) {
+        set(target, value);
+    }
+
+    public float getFloat(Object target) {
+        return (Float) get(target);
+    }
+
+    public void setFloat(Object target, float value) {
+        set(target, value);
+    }
+
+    public double getDouble(Object target) {
+        return (Double) get(target);
+    }
+
+    public void setDouble(Object target, double value) {
+        set(target, value);
+    }
+
+    public char getChar(Object target) {
+        return (Character) get(target);
+    }
+
+    public void setChar(Object target, char value) {
+        set(target, value);
+    }
+}
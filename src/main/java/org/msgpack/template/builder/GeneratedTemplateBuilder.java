@@ -0,0 +1,107 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.template.builder;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Type;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.msgpack.annotation.Beans;
+import org.msgpack.annotation.Message;
+import org.msgpack.annotation.MessagePackBeans;
+import org.msgpack.annotation.MessagePackMessage;
+import org.msgpack.template.FieldOption;
+import org.msgpack.template.Template;
+import org.msgpack.template.TemplateRegistry;
+
+/**
+ * Template builder that instantiates templates generated at compile time by
+ * {@link org.msgpack.util.TemplateAnnotationProcessor}. It matches only the
+ * classes whose generated template can be loaded.
+ */
+public class GeneratedTemplateBuilder extends AbstractTemplateBuilder {
+
+    private static Logger LOG = Logger.getLogger(GeneratedTemplateBuilder.class.getName());
+
+    public static final String SUFFIX = "_$$_GeneratedTemplate";
+
+    public GeneratedTemplateBuilder(TemplateRegistry registry) {
+        super(registry);
+    }
+
+    public static Class<?> getGeneratedTemplateClass(Class<?> targetClass) {
+        ClassLoader cl = targetClass.getClassLoader();
+        if (cl == null || targetClass.isArray() || targetClass.isPrimitive()) {
+            return null;
+        }
+        try {
+            return Class.forName(targetClass.getName() + SUFFIX, false, cl);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean matchType(Type targetType, boolean hasAnnotation) {
+        if (!(targetType instanceof Class)) {
+            return false;
+        }
+        Class<?> targetClass = (Class<?>) targetType;
+        boolean matched = getGeneratedTemplateClass(targetClass) != null;
+        if (matched && LOG.isLoggable(Level.FINE)) {
+            LOG.fine("matched type: " + targetClass.getName());
+        }
+        return matched;
+    }
+
+    @Override
+    protected FieldEntry[] toFieldEntries(Class<?> targetClass, FieldOption from) {
+        // same layout as the builder that would be selected otherwise
+        if (!isAnnotated(targetClass, Message.class)
+                && !isAnnotated(targetClass, MessagePackMessage.class)
+                && (isAnnotated(targetClass, Beans.class)
+                        || isAnnotated(targetClass, MessagePackBeans.class))) {
+            return new ReflectionBeansTemplateBuilder(registry).toFieldEntries(targetClass, from);
+        }
+        return super.toFieldEntries(targetClass, from);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected <T> Template<T> buildTemplate(Class<T> targetClass, FieldEntry[] entries) {
+        Class<?> tmplClass = getGeneratedTemplateClass(targetClass);
+        if (tmplClass == null) {
+            throw new TemplateBuildException(
+                    "Generated template is not found: " + targetClass.getName() + SUFFIX);
+        }
+        try {
+            Constructor<?> cons = tmplClass.getConstructor(
+                    new Class[] { TemplateRegistry.class, FieldEntry[].class });
+            return (Template<T>) cons.newInstance(new Object[] { registry, entries });
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TemplateBuildException(e.getCause());
+        } catch (Exception e) {
+            throw new TemplateBuildException(e);
+        }
+    }
+}
@@ -19,9 +19,13 @@ package org.msgpack.template.builder;
 
 import java.lang.Thread;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javassist.ClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.LoaderClassPath;
@@ -47,20 +51,37 @@ public class JavassistTemplateBuilder extends AbstractTemplateBuilder {
         }
     }
 
-    protected ClassPool pool;
-
-    protected int seqId = 0;
+    /**
+     * ClassPool shared by all builders. It searches only the class loader of
+     * msgpack, so that it caches CtClass objects of classes that live as long
+     * as msgpack itself. It is not modified after its creation, and javassist
+     * synchronizes lookups in it, so builds running in parallel can share it.
+     */
+    private static ClassPool sharedPool;
+
+    private static final AtomicInteger seqId = new AtomicInteger();
+
+    /**
+     * search paths of the class loaders added to this builder. They refer to
+     * the loaders weakly.
+     */
+    private final List<ClassPath> classPaths = new CopyOnWriteArrayList<ClassPath>();
+
+    /**
+     * pool of the template being built by the current thread. It is a child
+     * of the shared pool, created for every build and discarded after it,
+     * so that CtClass objects of target classes and templates are not kept
+     * in memory, and builds on other threads do not touch it.
+     */
+    private final ThreadLocal<ClassPool> buildPool = new ThreadLocal<ClassPool>();
 
     public JavassistTemplateBuilder(TemplateRegistry registry) {
         super(registry);
-        pool = new ClassPool();
-        boolean appended = false;
         ClassLoader cl = null;
         try {
             cl = Thread.currentThread().getContextClassLoader();
             if (cl != null) {
-                pool.appendClassPath(new LoaderClassPath(cl));
-                appended = true;
+                addClassLoader(cl);
             }
         } catch (SecurityException e) {
             LOG.fine("Cannot append a search path of context classloader");
@@ -69,16 +90,45 @@ public class JavassistTemplateBuilder extends AbstractTemplateBuilder {
         try {
             ClassLoader cl2 = getClass().getClassLoader();
             if (cl2 != null && cl2 != cl) {
-                pool.appendClassPath(new LoaderClassPath(cl2));
-                appended = true;
+                addClassLoader(cl2);
             }
         } catch (SecurityException e) {
             LOG.fine("Cannot append a search path of classloader");
             e.printStackTrace();
         }
-        if (!appended) {
-            pool.appendSystemPath();
+    }
+
+    protected static synchronized ClassPool getSharedClassPool() {
+        if (sharedPool == null) {
+            sharedPool = new ClassPool();
+            ClassLoader cl = null;
+            try {
+                cl = JavassistTemplateBuilder.class.getClassLoader();
+            } catch (SecurityException e) {
+                LOG.fine("Cannot append a search path of classloader");
+            }
+            if (cl != null) {
+                sharedPool.appendClassPath(new LoaderClassPath(cl));
+            } else {
+                sharedPool.appendSystemPath();
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * creates the pool used to build a template of the class.
+     */
+    protected ClassPool createClassPool(Class<?> targetClass) {
+        ClassPool cp = new ClassPool(getSharedClassPool());
+        ClassLoader cl = targetClass.getClassLoader();
+        if (cl != null) {
+            cp.appendClassPath(new LoaderClassPath(cl));
+        }
+        for (ClassPath path : classPaths) {
+            cp.appendClassPath(path);
         }
+        return cp;
     }
 
     @Override
@@ -92,19 +142,21 @@ public class JavassistTemplateBuilder extends AbstractTemplateBuilder {
     }
 
     public void addClassLoader(ClassLoader cl) {
-        pool.appendClassPath(new LoaderClassPath(cl));
+        classPaths.add(new LoaderClassPath(cl));
     }
 
     protected CtClass makeCtClass(String className) {
-        return pool.makeClass(className);
+        return buildPool.get().makeClass(className);
     }
 
     protected CtClass getCtClass(String className) throws NotFoundException {
-        return pool.get(className);
+        return buildPool.get().get(className);
     }
 
     protected int nextSeqId() {
-        return seqId++;
+        // unique across builders, because templates of a class are defined
+        // in the same class loader
+        return seqId.getAndIncrement();
     }
 
     protected BuildContext createBuildContext() {
@@ -115,7 +167,29 @@ public class JavassistTemplateBuilder extends AbstractTemplateBuilder {
     public <T> Template<T> buildTemplate(Class<T> targetClass, FieldEntry[] entries) {
         Template<?>[] tmpls = toTemplate(entries);
         BuildContext bc = createBuildContext();
-        return bc.buildTemplate(targetClass, entries, tmpls);
+        ClassPool previous = beginBuild(targetClass);
+        try {
+            return bc.buildTemplate(targetClass, entries, tmpls);
+        } finally {
+            endBuild(previous);
+        }
+    }
+
+    // templates of other classes may be built at the same time on other
+    // threads; each build compiles in a pool of its own. Returns the pool
+    // of an enclosing build on this thread, to be restored afterwards.
+    private ClassPool beginBuild(Class<?> targetClass) {
+        ClassPool previous = buildPool.get();
+        buildPool.set(createClassPool(targetClass));
+        return previous;
+    }
+
+    private void endBuild(ClassPool previous) {
+        if (previous == null) {
+            buildPool.remove();
+        } else {
+            buildPool.set(previous);
+        }
     }
 
     private Template<?>[] toTemplate(FieldEntry[] from) {
@@ -144,7 +218,12 @@ public class JavassistTemplateBuilder extends AbstractTemplateBuilder {
     private void writeTemplate(Class<?> targetClass, FieldEntry[] entries, String directoryName) {
         Template[] tmpls = toTemplate(entries);
         BuildContext bc = createBuildContext();
-        bc.writeTemplate(targetClass, entries, tmpls, directoryName);
+        ClassPool previous = beginBuild(targetClass);
+        try {
+            bc.writeTemplate(targetClass, entries, tmpls, directoryName);
+        } finally {
+            endBuild(previous);
+        }
     }
 
     @Override
@@ -17,7 +17,7 @@
 //
 package org.msgpack.template.builder;
 
-import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -25,19 +25,17 @@ import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.msgpack.MessageTypeException;
 import org.msgpack.annotation.Ignore;
 import org.msgpack.annotation.Index;
 import org.msgpack.annotation.NotNullable;
 import org.msgpack.annotation.Optional;
-import org.msgpack.packer.Packer;
 import org.msgpack.template.FieldOption;
-import org.msgpack.template.Template;
 import org.msgpack.template.TemplateRegistry;
 import org.msgpack.template.builder.beans.BeanInfo;
 import org.msgpack.template.builder.beans.IntrospectionException;
 import org.msgpack.template.builder.beans.Introspector;
 import org.msgpack.template.builder.beans.PropertyDescriptor;
-import org.msgpack.unpacker.Unpacker;
 
 /**
  * Class for building java reflection template builder for java beans class.
@@ -45,26 +43,48 @@ import org.msgpack.unpacker.Unpacker;
  * @author takeshita
  * 
  */
-@SuppressWarnings({ "rawtypes" })
 public class ReflectionBeansTemplateBuilder extends ReflectionTemplateBuilder {
 
     private static Logger LOG = Logger.getLogger(ReflectionBeansTemplateBuilder.class.getName());
 
-    static class ReflectionBeansFieldTemplate extends ReflectionFieldTemplate {
-        ReflectionBeansFieldTemplate(final FieldEntry entry) {
-            super(entry);
+    /**
+     * accesses a property through its getter and setter, which are resolved
+     * once when the template is built.
+     */
+    static final class PropertyAccessor extends FieldAccessor {
+        private final Method getter;
+
+        private final Method setter;
+
+        PropertyAccessor(final BeansFieldEntry entry) {
+            this.getter = entry.getPropertyDescriptor().getReadMethod();
+            this.setter = entry.getPropertyDescriptor().getWriteMethod();
         }
 
         @Override
-        public void write(Packer packer, Object v, boolean required) throws IOException {
-            packer.write(v);
+        public Object get(Object target) {
+            try {
+                return getter.invoke(target);
+            } catch (IllegalArgumentException e) {
+                throw new MessageTypeException(e);
+            } catch (IllegalAccessException e) {
+                throw new MessageTypeException(e);
+            } catch (InvocationTargetException e) {
+                throw new MessageTypeException(e);
+            }
         }
 
         @Override
-        public Object read(Unpacker unpacker, Object to, boolean required) throws IOException {
-            Object o = unpacker.read(entry.getType());
-            entry.set(to, o);
-            return o;
+        public void set(Object target, Object value) {
+            try {
+                setter.invoke(target, value);
+            } catch (IllegalArgumentException e) {
+                throw new MessageTypeException(e);
+            } catch (IllegalAccessException e) {
+                throw new MessageTypeException(e);
+            } catch (InvocationTargetException e) {
+                throw new MessageTypeException(e);
+            }
         }
     }
 
@@ -83,19 +103,8 @@ public class ReflectionBeansTemplateBuilder extends ReflectionTemplateBuilder {
     }
 
     @Override
-    protected ReflectionFieldTemplate[] toTemplates(FieldEntry[] entries) {
-        ReflectionFieldTemplate[] tmpls = new ReflectionFieldTemplate[entries.length];
-        for (int i = 0; i < entries.length; i++) {
-            FieldEntry e = entries[i];
-            Class<?> type = e.getType();
-            if (type.isPrimitive()) {
-                tmpls[i] = new ReflectionBeansFieldTemplate(e);
-            } else {
-                Template tmpl = registry.lookup(e.getGenericType());
-                tmpls[i] = new FieldTemplateImpl(e, tmpl);
-            }
-        }
-        return tmpls;
+    protected FieldAccessor createFieldAccessor(FieldEntry entry) {
+        return new PropertyAccessor((BeansFieldEntry) entry);
     }
 
     @Override
@@ -0,0 +1,206 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.template.builder;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.msgpack.MessageTypeException;
+
+/**
+ * {@link FieldAccessor} using the typed accessors of
+ * {@link java.lang.reflect.Field}. It is available on every runtime.
+ */
+public class ReflectionFieldAccessor extends FieldAccessor {
+    protected Field field;
+
+    public ReflectionFieldAccessor(Field field) {
+        this.field = field;
+        if (!Modifier.isPublic(field.getModifiers())) {
+            field.setAccessible(true);
+        }
+    }
+
+    // IllegalAccessException from the Field methods, or the
+    // IllegalArgumentException or NullPointerException of a wrong target
+    private static MessageTypeException accessFailure(Exception e) {
+        return new MessageTypeException(e);
+    }
+
+    @Override
+    public Object get(Object target) {
+        try {
+            return field.get(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void set(Object target, Object value) {
+        try {
+            field.set(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(Object target) {
+        try {
+            return field.getBoolean(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setBoolean(Object target, boolean value) {
+        try {
+            field.setBoolean(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public byte getByte(Object target) {
+        try {
+            return field.getByte(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setByte(Object target, byte value) {
+        try {
+            field.setByte(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public short getShort(Object target) {
+        try {
+            return field.getShort(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setShort(Object target, short value) {
+        try {
+            field.setShort(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public int getInt(Object target) {
+        try {
+            return field.getInt(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setInt(Object target, int value) {
+        try {
+            field.setInt(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public long getLong(Object target) {
+        try {
+            return field.getLong(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setLong(Object target, long value) {
+        try {
+            field.setLong(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public float getFloat(Object target) {
+        try {
+            return field.getFloat(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setFloat(Object target, float value) {
+        try {
+            field.setFloat(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public double getDouble(Object target) {
+        try {
+            return field.getDouble(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setDouble(Object target, double value) {
+        try {
+            field.setDouble(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public char getChar(Object target) {
+        try {
+            return field.getChar(target);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+
+    @Override
+    public void setChar(Object target, char value) {
+        try {
+            field.setChar(target, value);
+        } catch (Exception e) {
+            throw accessFailure(e);
+        }
+    }
+}
@@ -19,13 +19,20 @@ package org.msgpack.template.builder;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
+import org.msgpack.template.BooleanTemplate;
+import org.msgpack.template.ByteTemplate;
+import org.msgpack.template.CharacterTemplate;
+import org.msgpack.template.DoubleTemplate;
+import org.msgpack.template.FloatTemplate;
+import org.msgpack.template.IntegerTemplate;
+import org.msgpack.template.LongTemplate;
+import org.msgpack.template.ShortTemplate;
 import org.msgpack.template.Template;
 import org.msgpack.template.AbstractTemplate;
 import org.msgpack.template.TemplateRegistry;
@@ -39,16 +46,64 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
     protected static abstract class ReflectionFieldTemplate extends AbstractTemplate<Object> {
         protected FieldEntry entry;
 
+        protected FieldAccessor accessor;
+
         ReflectionFieldTemplate(final FieldEntry entry) {
+            this(entry, new FieldEntryAccessor(entry));
+        }
+
+        ReflectionFieldTemplate(final FieldEntry entry, final FieldAccessor accessor) {
             this.entry = entry;
+            this.accessor = accessor;
         }
 
         void setNil(Object v) {
-            entry.set(v, null);
+            accessor.set(v, null);
+        }
+
+        /**
+         * writes the field of the target object.
+         */
+        void writeField(Packer packer, Object target) throws IOException {
+            Object obj = accessor.get(target);
+            if (obj == null) {
+                if (entry.isNotNullable()) {
+                    throw new MessageTypeException(entry.getName()
+                            + " cannot be null by @NotNullable");
+                }
+                packer.writeNil();
+            } else {
+                write(packer, obj, true);
+            }
+        }
+
+        /**
+         * reads the field of the target object.
+         */
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            read(unpacker, target, false);
+        }
+    }
+
+    static final class FieldEntryAccessor extends FieldAccessor {
+        private final FieldEntry entry;
+
+        FieldEntryAccessor(final FieldEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object get(Object target) {
+            return entry.get(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            entry.set(target, value);
         }
     }
 
-    static final class FieldTemplateImpl extends ReflectionFieldTemplate {
+    static class FieldTemplateImpl extends ReflectionFieldTemplate {
         private Template template;
 
         public FieldTemplateImpl(final FieldEntry entry, final Template template) {
@@ -56,6 +111,12 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
             this.template = template;
         }
 
+        public FieldTemplateImpl(final FieldEntry entry, final FieldAccessor accessor,
+                final Template template) {
+            super(entry, accessor);
+            this.template = template;
+        }
+
         @Override
         public void write(Packer packer, Object v, boolean required)
                 throws IOException {
@@ -66,15 +127,145 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
         public Object read(Unpacker unpacker, Object to, boolean required)
                 throws IOException {
             // Class<Object> type = (Class<Object>) entry.getType();
-            Object f = entry.get(to);
+            Object f = accessor.get(to);
             Object o = template.read(unpacker, f, required);
             if (o != f) {
-                entry.set(to, o);
+                accessor.set(to, o);
             }
             return o;
         }
     }
 
+    // templates of primitive fields, which do not box the values
+
+    static final class BooleanFieldTemplate extends FieldTemplateImpl {
+        BooleanFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, BooleanTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getBoolean(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setBoolean(target, unpacker.readBoolean());
+        }
+    }
+
+    static final class ByteFieldTemplate extends FieldTemplateImpl {
+        ByteFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, ByteTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getByte(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setByte(target, unpacker.readByte());
+        }
+    }
+
+    static final class ShortFieldTemplate extends FieldTemplateImpl {
+        ShortFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, ShortTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getShort(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setShort(target, unpacker.readShort());
+        }
+    }
+
+    static final class IntFieldTemplate extends FieldTemplateImpl {
+        IntFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, IntegerTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getInt(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setInt(target, unpacker.readInt());
+        }
+    }
+
+    static final class LongFieldTemplate extends FieldTemplateImpl {
+        LongFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, LongTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getLong(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setLong(target, unpacker.readLong());
+        }
+    }
+
+    static final class FloatFieldTemplate extends FieldTemplateImpl {
+        FloatFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, FloatTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getFloat(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setFloat(target, unpacker.readFloat());
+        }
+    }
+
+    static final class DoubleFieldTemplate extends FieldTemplateImpl {
+        DoubleFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, DoubleTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write(accessor.getDouble(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setDouble(target, unpacker.readDouble());
+        }
+    }
+
+    static final class CharFieldTemplate extends FieldTemplateImpl {
+        CharFieldTemplate(FieldEntry entry, FieldAccessor accessor) {
+            super(entry, accessor, CharacterTemplate.getInstance());
+        }
+
+        @Override
+        void writeField(Packer packer, Object target) throws IOException {
+            packer.write((int) accessor.getChar(target));
+        }
+
+        @Override
+        void readField(Unpacker unpacker, Object target) throws IOException {
+            accessor.setChar(target, (char) unpacker.readInt());
+        }
+    }
+
     protected static class ReflectionClassTemplate<T> extends AbstractTemplate<T> {
         protected Class<T> targetClass;
 
@@ -102,16 +293,7 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
                         packer.writeNil();
                         continue;
                     }
-                    Object obj = tmpl.entry.get(target);
-                    if (obj == null) {
-                        if (tmpl.entry.isNotNullable()) {
-                            throw new MessageTypeException(tmpl.entry.getName()
-                                    + " cannot be null by @NotNullable");
-                        }
-                        packer.writeNil();
-                    } else {
-                        tmpl.write(packer, obj, true);
-                    }
+                    tmpl.writeField(packer, target);
                 }
                 packer.writeArrayEnd();
             } catch (IOException e) {
@@ -140,7 +322,7 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
                     } else if (tmpl.entry.isOptional() && unpacker.trySkipNil()) {
                         // if Optional + nil, than keep default value
                     } else {
-                        tmpl.read(unpacker, to, false);
+                        tmpl.readField(unpacker, to);
                     }
                 }
 
@@ -179,22 +361,48 @@ public class ReflectionTemplateBuilder extends AbstractTemplateBuilder {
     }
 
     protected ReflectionFieldTemplate[] toTemplates(FieldEntry[] entries) {
-        // TODO Now it is simply cast. #SF
-        for (FieldEntry entry : entries) {
-            Field field = ((DefaultFieldEntry) entry).getField();
-            int mod = field.getModifiers();
-            if (!Modifier.isPublic(mod)) {
-                field.setAccessible(true);
-            }
-        }
-
         ReflectionFieldTemplate[] templates = new ReflectionFieldTemplate[entries.length];
         for (int i = 0; i < entries.length; i++) {
             FieldEntry entry = entries[i];
-            // Class<?> t = entry.getType();
-            Template template = registry.lookup(entry.getGenericType());
-            templates[i] = new FieldTemplateImpl(entry, template);
+            if (!entry.isAvailable()) {
+                templates[i] = new FieldTemplateImpl(entry, null);
+                continue;
+            }
+            templates[i] = toTemplate(entry, createFieldAccessor(entry));
         }
         return templates;
     }
+
+    protected ReflectionFieldTemplate toTemplate(FieldEntry entry, FieldAccessor accessor) {
+        Class<?> type = entry.getType();
+        if (type == boolean.class) {
+            return new BooleanFieldTemplate(entry, accessor);
+        } else if (type == byte.class) {
+            return new ByteFieldTemplate(entry, accessor);
+        } else if (type == short.class) {
+            return new ShortFieldTemplate(entry, accessor);
+        } else if (type == int.class) {
+            return new IntFieldTemplate(entry, accessor);
+        } else if (type == long.class) {
+            return new LongFieldTemplate(entry, accessor);
+        } else if (type == float.class) {
+            return new FloatFieldTemplate(entry, accessor);
+        } else if (type == double.class) {
+            return new DoubleFieldTemplate(entry, accessor);
+        } else if (type == char.class) {
+            return new CharFieldTemplate(entry, accessor);
+        }
+        Template template = registry.lookup(entry.getGenericType());
+        return new FieldTemplateImpl(entry, accessor, template);
+    }
+
+    /**
+     * Returns the accessor used to read and write the field of the entry.
+     * Subclasses may override this to plug in another access strategy.
+     */
+    protected FieldAccessor createFieldAccessor(FieldEntry entry) {
+        // TODO Now it is simply cast. #SF
+        Field field = ((DefaultFieldEntry) entry).getField();
+        return FieldAccessor.create(field);
+    }
 }
@@ -64,6 +64,8 @@ public class TemplateBuilderChain {
         TemplateBuilder builder;
         templateBuilders.add(new ArrayTemplateBuilder(registry));
         templateBuilders.add(new OrdinalEnumTemplateBuilder(registry));
+        // templates generated at compile time are preferred to the others
+        templateBuilders.add(new GeneratedTemplateBuilder(registry));
         if (enableDynamicCodeGeneration()) { // use dynamic code generation
             builder = forceBuilder;
             templateBuilders.add(builder);
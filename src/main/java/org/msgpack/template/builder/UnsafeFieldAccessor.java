@@ -0,0 +1,216 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.template.builder;
+
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+import org.msgpack.MessageTypeException;
+
+import sun.misc.Unsafe;
+
+/**
+ * {@link FieldAccessor} that reads and writes fields at their offsets
+ * through <code>sun.misc.Unsafe</code>. It is used only when the runtime
+ * provides Unsafe; otherwise {@link ReflectionFieldAccessor} is used.
+ * Volatile fields must not be accessed with this accessor, and the typed
+ * methods must match the type of the field.
+ */
+@SuppressWarnings("restriction")
+public class UnsafeFieldAccessor extends FieldAccessor {
+
+    private static Logger LOG = Logger.getLogger(UnsafeFieldAccessor.class.getName());
+
+    private static final Unsafe UNSAFE = findUnsafe();
+
+    private static Unsafe findUnsafe() {
+        try {
+            if (System.getProperty("java.vm.name").equals("Dalvik")) {
+                // Unsafe of Dalvik lacks most of the typed accessors
+                return null;
+            }
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return (Unsafe) f.get(null);
+        } catch (Throwable t) {
+            LOG.fine("sun.misc.Unsafe is not available: " + t);
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return UNSAFE != null;
+    }
+
+    private final Class<?> declaringClass;
+
+    private final Class<?> type;
+
+    private final long offset;
+
+    public UnsafeFieldAccessor(Field field) {
+        if (UNSAFE == null) {
+            throw new UnsupportedOperationException("sun.misc.Unsafe is not available");
+        }
+        this.declaringClass = field.getDeclaringClass();
+        this.type = field.getType();
+        this.offset = UNSAFE.objectFieldOffset(field);
+    }
+
+    // Unsafe does not check anything, so the checks of Field.get/set are
+    // done here to keep the heap sane
+    private Object check(Object target) {
+        if (!declaringClass.isInstance(target)) {
+            throw new MessageTypeException("Expected " + declaringClass.getName()
+                    + " but got " + (target == null ? "null" : target.getClass().getName()));
+        }
+        return target;
+    }
+
+    @Override
+    public Object get(Object target) {
+        if (!type.isPrimitive()) {
+            return UNSAFE.getObject(check(target), offset);
+        } else if (type == boolean.class) {
+            return getBoolean(target);
+        } else if (type == byte.class) {
+            return getByte(target);
+        } else if (type == short.class) {
+            return getShort(target);
+        } else if (type == int.class) {
+            return getInt(target);
+        } else if (type == long.class) {
+            return getLong(target);
+        } else if (type == float.class) {
+            return getFloat(target);
+        } else if (type == double.class) {
+            return getDouble(target);
+        } else {
+            return getChar(target);
+        }
+    }
+
+    @Override
+    public void set(Object target, Object value) {
+        try {
+            if (!type.isPrimitive()) {
+                UNSAFE.putObject(check(target), offset, type.cast(value));
+            } else if (type == boolean.class) {
+                setBoolean(target, (Boolean) value);
+            } else if (type == byte.class) {
+                setByte(target, (Byte) value);
+            } else if (type == short.class) {
+                setShort(target, (Short) value);
+            } else if (type == int.class) {
+                setInt(target, (Integer) value);
+            } else if (type == long.class) {
+                setLong(target, (Long) value);
+            } else if (type == float.class) {
+                setFloat(target, (Float) value);
+            } else if (type == double.class) {
+                setDouble(target, (Double) value);
+            } else {
+                setChar(target, (Character) value);
+            }
+        } catch (ClassCastException e) {
+            throw new MessageTypeException(e);
+        } catch (NullPointerException e) {
+            throw new MessageTypeException(e);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(Object target) {
+        return UNSAFE.getBoolean(check(target), offset);
+    }
+
+    @Override
+    public void setBoolean(Object target, boolean value) {
+        UNSAFE.putBoolean(check(target), offset, value);
+    }
+
+    @Override
+    public byte getByte(Object target) {
+        return UNSAFE.getByte(check(target), offset);
+    }
+
+    @Override
+    public void setByte(Object target, byte value) {
+        UNSAFE.putByte(check(target), offset, value);
+    }
+
+    @Override
+    public short getShort(Object target) {
+        return UNSAFE.getShort(check(target), offset);
+    }
+
+    @Override
+    public void setShort(Object target, short value) {
+        UNSAFE.putShort(check(target), offset, value);
+    }
+
+    @Override
+    public int getInt(Object target) {
+        return UNSAFE.getInt(check(target), offset);
+    }
+
+    @Override
+    public void setInt(Object target, int value) {
+        UNSAFE.putInt(check(target), offset, value);
+    }
+
+    @Override
+    public long getLong(Object target) {
+        return UNSAFE.getLong(check(target), offset);
+    }
+
+    @Override
+    public void setLong(Object target, long value) {
+        UNSAFE.putLong(check(target), offset, value);
+    }
+
+    @Override
+    public float getFloat(Object target) {
+        return UNSAFE.getFloat(check(target), offset);
+    }
+
+    @Override
+    public void setFloat(Object target, float value) {
+        UNSAFE.putFloat(check(target), offset, value);
+    }
+
+    @Override
+    public double getDouble(Object target) {
+        return UNSAFE.getDouble(check(target), offset);
+    }
+
+    @Override
+    public void setDouble(Object target, double value) {
+        UNSAFE.putDouble(check(target), offset, value);
+    }
+
+    @Override
+    public char getChar(Object target) {
+        return UNSAFE.getChar(check(target), offset);
+    }
+
+    @Override
+    public void setChar(Object target, char value) {
+        UNSAFE.putChar(check(target), offset, value);
+    }
+}
@@ -66,6 +66,11 @@ abstract class AbstractMapValue extends AbstractMap<Value, Value> implements Map
         return false;
     }
 
+    @Override
+    public boolean isExtValue() {
+        return false;
+    }
+
     @Override
     public NilValue asNilValue() {
         throw new MessageTypeException();
@@ -95,4 +100,9 @@ abstract class AbstractMapValue extends AbstractMap<Value, Value> implements Map
     public RawValue asRawValue() {
         throw new MessageTypeException();
     }
+
+    @Override
+    public ExtValue asExtValue() {
+        throw new MessageTypeException();
+    }
 }
@@ -48,6 +48,10 @@ abstract class AbstractValue implements Value {
         return false;
     }
 
+    public boolean isExtValue() {
+        return false;
+    }
+
     public NilValue asNilValue() {
         throw new MessageTypeException();
     }
@@ -75,4 +79,8 @@ abstract class AbstractValue implements Value {
     public RawValue asRawValue() {
         throw new MessageTypeException();
     }
+
+    public ExtValue asExtValue() {
+        throw new MessageTypeException();
+    }
 }
@@ -0,0 +1,106 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.type;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.msgpack.packer.Packer;
+
+class ExtValueImpl extends AbstractValue implements ExtValue {
+    private final byte type;
+
+    private final byte[] bytes;
+
+    ExtValueImpl(byte type, byte[] bytes, boolean gift) {
+        this.type = type;
+        if (gift) {
+            this.bytes = bytes;
+        } else {
+            this.bytes = new byte[bytes.length];
+            System.arraycopy(bytes, 0, this.bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    public ValueType getType() {
+        return ValueType.EXT;
+    }
+
+    @Override
+    public boolean isExtValue() {
+        return true;
+    }
+
+    @Override
+    public ExtValue asExtValue() {
+        return this;
+    }
+
+    @Override
+    public byte getExtType() {
+        return type;
+    }
+
+    @Override
+    public byte[] getByteArray() {
+        return bytes;
+    }
+
+    @Override
+    public void writeTo(Packer pk) throws IOException {
+        pk.writeExt(type, bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Value)) {
+            return false;
+        }
+        Value v = (Value) o;
+        if (!v.isExtValue()) {
+            return false;
+        }
+        ExtValue e = v.asExtValue();
+        return type == e.getExtType() && Arrays.equals(bytes, e.getByteArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type + Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return toString(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder toString(StringBuilder sb) {
+        sb.append("ext(").append(type).append(",\"");
+        for (byte b : bytes) {
+            sb.append(HEX_TABLE[(b >> 4) & 0x0f]);
+            sb.append(HEX_TABLE[b & 0x0f]);
+        }
+        return sb.append("\")");
+    }
+
+    private final static char[] HEX_TABLE = "0123456789ABCDEF".toCharArray();
+}
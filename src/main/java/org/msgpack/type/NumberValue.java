@@ -57,6 +57,11 @@ public abstract class NumberValue extends Number implements Value {
         return false;
     }
 
+    @Override
+    public boolean isExtValue() {
+        return false;
+    }
+
     @Override
     public NilValue asNilValue() {
         throw new MessageTypeException();
@@ -92,5 +97,10 @@ public abstract class NumberValue extends Number implements Value {
         throw new MessageTypeException();
     }
 
+    @Override
+    public ExtValue asExtValue() {
+        throw new MessageTypeException();
+    }
+
     public abstract BigInteger bigIntegerValue();
 }
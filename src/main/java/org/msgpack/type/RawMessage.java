@@ -0,0 +1,241 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.type;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.msgpack.MessageTypeException;
+
+/**
+ * A single object that is already encoded in MessagePack. Packers copy its
+ * bytes verbatim (see
+ * {@link org.msgpack.packer.Packer#writeRawMessage(RawMessage)}), so that
+ * cached or forwarded sub-documents need not be decoded and encoded again.
+ * The bytes are checked to hold exactly one complete object when the
+ * message is created; they are not copied and must not be modified
+ * afterwards.
+ */
+public final class RawMessage {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public RawMessage(byte[] b) {
+        this(b, 0, b.length);
+    }
+
+    public RawMessage(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        validate(ByteBuffer.wrap(b, off, len));
+        this.bytes = b;
+        this.offset = off;
+        this.length = len;
+    }
+
+    /**
+     * Returns the array holding the encoded bytes, which start at
+     * {@link #getOffset()}. The array is shared, not copied.
+     */
+    public byte[] getBuffer() {
+        return bytes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        byte[] b = new byte[length];
+        System.arraycopy(bytes, offset, b, 0, length);
+        return b;
+    }
+
+    /**
+     * Returns a read-only view of the encoded bytes.
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, offset, length).asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof RawMessage)) {
+            return false;
+        }
+        RawMessage m = (RawMessage) o;
+        return toByteBuffer().equals(m.toByteBuffer());
+    }
+
+    @Override
+    public int hashCode() {
+        return toByteBuffer().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RawMessage" + Arrays.toString(toByteArray());
+    }
+
+    /**
+     * Checks that the remaining bytes of bb are exactly one complete
+     * MessagePack object, without decoding it. The position of bb is not
+     * changed.
+     * 
+     * @throws MessageTypeException
+     *             if the bytes are truncated, malformed or followed by more
+     *             bytes
+     */
+    public static void validate(ByteBuffer bb) {
+        final int end = bb.limit();
+        long pos = bb.position();
+        long objects = 1; // objects still to be walked over
+        while (objects > 0) {
+            if (pos >= end) {
+                throw new MessageTypeException("Truncated raw message");
+            }
+            final int b = bb.get((int) pos) & 0xff;
+            objects--;
+            long header = 1;
+            long body = 0;
+            if (b <= 0x7f || b >= 0xe0) { // fixint
+            } else if (b <= 0x8f) { // fixmap
+                objects += 2L * (b & 0x0f);
+            } else if (b <= 0x9f) { // fixarray
+                objects += b & 0x0f;
+            } else if (b <= 0xbf) { // fixstr
+                body = b & 0x1f;
+            } else {
+                switch (b) {
+                case 0xc0: // nil
+                case 0xc2: // false
+                case 0xc3: // true
+                    break;
+                case 0xc4: // bin 8
+                case 0xd9: // str 8
+                    header = 2;
+                    body = length(bb, pos, end, 1);
+                    break;
+                case 0xc5: // bin 16
+                case 0xda: // str 16
+                    header = 3;
+                    body = length(bb, pos, end, 2);
+                    break;
+                case 0xc6: // bin 32
+                case 0xdb: // str 32
+                    header = 5;
+                    body = length(bb, pos, end, 4);
+                    break;
+                case 0xc7: // ext 8
+                    header = 3;
+                    body = length(bb, pos, end, 1);
+                    break;
+                case 0xc8: // ext 16
+                    header = 4;
+                    body = length(bb, pos, end, 2);
+                    break;
+                case 0xc9: // ext 32
+                    header = 6;
+                    body = length(bb, pos, end, 4);
+                    break;
+                case 0xcc: // unsigned 8
+                case 0xd0: // signed 8
+                    header = 2;
+                    break;
+                case 0xcd: // unsigned 16
+                case 0xd1: // signed 16
+                    header = 3;
+                    break;
+                case 0xca: // float
+                case 0xce: // unsigned 32
+                case 0xd2: // signed 32
+                    header = 5;
+                    break;
+                case 0xcb: // double
+                case 0xcf: // unsigned 64
+                case 0xd3: // signed 64
+                    header = 9;
+                    break;
+                case 0xd4: // fixext 1
+                    header = 3;
+                    break;
+                case 0xd5: // fixext 2
+                    header = 4;
+                    break;
+                case 0xd6: // fixext 4
+                    header = 6;
+                    break;
+                case 0xd7: // fixext 8
+                    header = 10;
+                    break;
+                case 0xd8: // fixext 16
+                    header = 18;
+                    break;
+                case 0xdc: // array 16
+                    header = 3;
+                    objects += length(bb, pos, end, 2);
+                    break;
+                case 0xdd: // array 32
+                    header = 5;
+                    objects += length(bb, pos, end, 4);
+                    break;
+                case 0xde: // map 16
+                    header = 3;
+                    objects += 2 * length(bb, pos, end, 2);
+                    break;
+                case 0xdf: // map 32
+                    header = 5;
+                    objects += 2 * length(bb, pos, end, 4);
+                    break;
+                default:
+                    throw new MessageTypeException("Invalid byte in raw message: " + b);
+                }
+            }
+            pos += header + body;
+            if (pos > end) {
+                throw new MessageTypeException("Truncated raw message");
+            }
+        }
+        if (pos != end) {
+            throw new MessageTypeException("Raw message has " + (end - pos)
+                    + " bytes after its object");
+        }
+    }
+
+    // reads the unsigned big-endian length of n bytes after the type byte
+    private static long length(ByteBuffer bb, long pos, int end, int n) {
+        if (pos + 1 + n > end) {
+            throw new MessageTypeException("Truncated raw message");
+        }
+        int p = (int) pos + 1;
+        long v = 0;
+        for (int i = 0; i < n; i++) {
+            v = (v << 8) | (bb.get(p + i) & 0xff);
+        }
+        return v;
+    }
+}
@@ -38,6 +38,8 @@ public interface Value {
 
     public boolean isRawValue();
 
+    public boolean isExtValue();
+
     public NilValue asNilValue();
 
     public BooleanValue asBooleanValue();
@@ -52,6 +54,8 @@ public interface Value {
 
     public RawValue asRawValue();
 
+    public ExtValue asExtValue();
+
     public void writeTo(Packer pk) throws IOException;
 
     public StringBuilder toString(StringBuilder sb);
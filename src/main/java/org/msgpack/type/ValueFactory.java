@@ -92,6 +92,20 @@ public final class ValueFactory {
         }
     }
 
+    public static ExtValue createExtValue(byte type, byte[] b) {
+        return createExtValue(type, b, false);
+    }
+
+    public static ExtValue createExtValue(byte type, byte[] b, boolean gift) {
+        return new ExtValueImpl(type, b, gift);
+    }
+
+    public static ExtValue createExtValue(byte type, byte[] b, int off, int len) {
+        byte[] data = new byte[len];
+        System.arraycopy(b, off, data, 0, len);
+        return new ExtValueImpl(type, data, true);
+    }
+
     public static ArrayValue createArrayValue() {
         return ArrayValueImpl.getEmptyInstance();
     }
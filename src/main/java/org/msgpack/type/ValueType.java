@@ -18,5 +18,5 @@
 package org.msgpack.type;
 
 public enum ValueType {
-    NIL, BOOLEAN, INTEGER, FLOAT, ARRAY, MAP, RAW;
+    NIL, BOOLEAN, INTEGER, FLOAT, ARRAY, MAP, RAW, EXT;
 }
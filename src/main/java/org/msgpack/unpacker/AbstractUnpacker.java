@@ -17,14 +17,22 @@
 //
 package org.msgpack.unpacker;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import org.msgpack.type.RawMessage;
 import org.msgpack.type.Value;
 import org.msgpack.MessagePack;
 import org.msgpack.template.Template;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.MessagePackBufferPacker;
 import org.msgpack.packer.Unconverter;
 
 public abstract class AbstractUnpacker implements Unpacker {
+    private static final int STREAMING_BUFFER_SIZE = 8 * 1024;
+
     protected MessagePack msgpack;
 
     protected int rawSizeLimit = 134217728;
@@ -52,6 +60,89 @@ public abstract class AbstractUnpacker implements Unpacker {
         readMapEnd(false);
     }
 
+    @Override
+    public int[] readArray(int[] to) throws IOException {
+        int n = readArrayBegin();
+        int[] array = to != null && to.length == n ? to : new int[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readInt();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public long[] readArray(long[] to) throws IOException {
+        int n = readArrayBegin();
+        long[] array = to != null && to.length == n ? to : new long[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readLong();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public float[] readArray(float[] to) throws IOException {
+        int n = readArrayBegin();
+        float[] array = to != null && to.length == n ? to : new float[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readFloat();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public double[] readArray(double[] to) throws IOException {
+        int n = readArrayBegin();
+        double[] array = to != null && to.length == n ? to : new double[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readDouble();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public long readRaw(OutputStream out) throws IOException {
+        int size = readRawBegin();
+        byte[] buffer = new byte[Math.min(size, STREAMING_BUFFER_SIZE)];
+        int remain = size;
+        while (remain > 0) {
+            int n = readRawBodyFully(buffer, Math.min(remain, buffer.length));
+            out.write(buffer, 0, n);
+            remain -= n;
+        }
+        readRawEnd();
+        return size;
+    }
+
+    @Override
+    public long readRaw(WritableByteChannel out) throws IOException {
+        int size = readRawBegin();
+        byte[] buffer = new byte[Math.min(size, STREAMING_BUFFER_SIZE)];
+        int remain = size;
+        while (remain > 0) {
+            int n = readRawBodyFully(buffer, Math.min(remain, buffer.length));
+            ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+            while (bb.hasRemaining()) {
+                out.write(bb);
+            }
+            remain -= n;
+        }
+        readRawEnd();
+        return size;
+    }
+
+    private int readRawBodyFully(byte[] buffer, int len) throws IOException {
+        int n = readRawBody(buffer, 0, len);
+        if (n <= 0) {
+            throw new EOFException();
+        }
+        return n;
+    }
+
     @Override
     public UnpackerIterator iterator() {
         return new UnpackerIterator(this);
@@ -66,6 +157,18 @@ public abstract class AbstractUnpacker implements Unpacker {
         return uc.getResult();
     }
 
+    /**
+     * Reads the next value and encodes it again, so the result is the
+     * canonical encoding of the value rather than the bytes that were read.
+     */
+    @Override
+    public RawMessage readRawMessage() throws IOException {
+        // msgpack may create packers of another format, such as JSON
+        BufferPacker pk = new MessagePackBufferPacker(msgpack);
+        readValue().writeTo(pk);
+        return new RawMessage(pk.toByteArray());
+    }
+
     protected abstract boolean tryReadNil() throws IOException;
 
     @Override
@@ -71,6 +71,10 @@ abstract class Accept implements BufferReferer {
         throw new MessageTypeException("Unexpected raw value");
     }
 
+    void acceptExt(byte type, byte[] data) throws IOException {
+        throw new MessageTypeException("Unexpected ext value");
+    }
+
     // void checkArrayAcceptable(int size) throws IOException {
     // throw new MessageTypeException("Unexpected array value");
     // }
@@ -17,8 +17,12 @@
 //
 package org.msgpack.unpacker;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.msgpack.template.Template;
+import org.msgpack.type.Value;
+
 /**
  * This class is buffer-specific deserializer.
  * 
@@ -49,4 +53,25 @@ public interface BufferUnpacker extends Unpacker {
     public void copyReferencedBuffer();
 
     public void clear();
+
+    /**
+     * Reads the next value if it has been fed completely. Otherwise keeps
+     * what has been decoded so far and returns null, so that the call can
+     * be repeated after more data is fed. Do not mix it with the other read
+     * methods while a value is incomplete.
+     * 
+     * @return the value, or null if more data is needed
+     */
+    public Value tryReadValue() throws IOException;
+
+    /**
+     * Like {@link #tryReadValue()}, but converts the value with the template.
+     * The value must not be nil: a complete nil value is consumed and
+     * reported with {@link org.msgpack.MessageTypeException}, so that null
+     * always means that more data is needed. Use {@link #tryReadValue()}
+     * for data that may contain nil.
+     * 
+     * @return the object, or null if more data is needed
+     */
+    public <T> T tryRead(Template<T> tmpl) throws IOException;
 }
@@ -24,6 +24,7 @@ import java.math.BigInteger;
 import org.msgpack.MessagePack;
 import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Unconverter;
+import org.msgpack.type.ExtValue;
 import org.msgpack.type.Value;
 import org.msgpack.type.ValueType;
 import org.msgpack.type.ArrayValue;
@@ -31,10 +32,17 @@ import org.msgpack.type.MapValue;
 
 public class Converter extends AbstractUnpacker {
     private final UnpackerStack stack;
+
+    // raw value being read by readRawBody
+    private byte[] streamingRaw;
+    private int streamingRawPosition;
     private Object[] values;
     protected Value value;
 
     public Converter(Value value) {
+        // not shared: a static instance would keep every template built
+        // through it, and the class loaders of their classes, alive.
+        // Built-in templates come from the shared root registry anyway.
         this(new MessagePack(), value);
     }
 
@@ -195,6 +203,44 @@ public class Converter extends AbstractUnpacker {
         return str;
     }
 
+    @Override
+    public int readRawBegin() throws IOException {
+        streamingRaw = readByteArray();
+        streamingRawPosition = 0;
+        return streamingRaw.length;
+    }
+
+    @Override
+    public int readRawBody(byte[] b, int off, int len) throws IOException {
+        if (streamingRaw == null) {
+            throw new MessageTypeException(
+                    "readRawBody() is called but readRawBegin() is not called");
+        }
+        int n = Math.min(len, streamingRaw.length - streamingRawPosition);
+        System.arraycopy(streamingRaw, streamingRawPosition, b, off, n);
+        streamingRawPosition += n;
+        return n;
+    }
+
+    @Override
+    public void readRawEnd() throws IOException {
+        if (streamingRaw == null || streamingRawPosition < streamingRaw.length) {
+            throw new MessageTypeException(
+                    "readRawEnd() is called but the raw body is not read completely");
+        }
+        streamingRaw = null;
+    }
+
+    @Override
+    public ExtValue readExt() throws IOException {
+        ExtValue ext = getTop().asExtValue();
+        stack.reduceCount();
+        if (stack.getDepth() == 0) {
+            value = null;
+        }
+        return ext;
+    }
+
     @Override
     public int readArrayBegin() throws IOException {
         Value v = getTop();
@@ -17,21 +17,53 @@
 //
 package org.msgpack.unpacker;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.msgpack.MessagePack;
+import org.msgpack.MessageTypeException;
+import org.msgpack.io.ArrayInput;
 import org.msgpack.io.LinkedBufferInput;
+import org.msgpack.io.WaterMarkListener;
+import org.msgpack.packer.Unconverter;
+import org.msgpack.template.Template;
+import org.msgpack.type.Value;
 
 public class MessagePackBufferUnpacker extends MessagePackUnpacker implements BufferUnpacker {
     private static final int DEFAULT_BUFFER_SIZE = 512; // TODO default buffer
                                                         // size
 
+    private final LinkedBufferInput linkedInput;
+
+    // partially decoded value of tryReadValue
+    private Unconverter pendingValue;
+
+    // used instead of linkedInput while a wrapped byte array is read
+    private final ArrayInput arrayInput;
+
     public MessagePackBufferUnpacker(MessagePack msgpack) {
         this(msgpack, DEFAULT_BUFFER_SIZE);
     }
 
     public MessagePackBufferUnpacker(MessagePack msgpack, int bufferSize) {
         super(msgpack, new LinkedBufferInput(bufferSize));
+        linkedInput = (LinkedBufferInput) in;
+        arrayInput = new ArrayInput();
+    }
+
+    private LinkedBufferInput toLinkedInput() {
+        if (in == arrayInput) {
+            // data fed after wrap(byte[]) is appended to the remaining bytes
+            linkedInput.clear();
+            if (arrayInput.getSize() > 0) {
+                linkedInput.feed(arrayInput.getBuffer(),
+                        arrayInput.getPosition(), arrayInput.getSize(), true);
+            }
+            arrayInput.reset(arrayInput.getBuffer(), 0, 0);
+            in = linkedInput;
+        }
+        return linkedInput;
     }
 
     @Override
@@ -41,67 +73,129 @@ public class MessagePackBufferUnpacker extends MessagePackUnpacker implements Bu
 
     @Override
     public MessagePackBufferUnpacker wrap(byte[] b, int off, int len) {
-        ((LinkedBufferInput) in).clear();
-        ((LinkedBufferInput) in).feed(b, off, len, true);
+        linkedInput.clear();
+        arrayInput.reset(b, off, len);
+        in = arrayInput;
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker wrap(ByteBuffer buf) {
-        ((LinkedBufferInput) in).clear();
-        ((LinkedBufferInput) in).feed(buf, true);
+        toLinkedInput().clear();
+        linkedInput.feed(buf, true);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(byte[] b) {
-        ((LinkedBufferInput) in).feed(b);
+        toLinkedInput().feed(b);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(byte[] b, boolean reference) {
-        ((LinkedBufferInput) in).feed(b, reference);
+        toLinkedInput().feed(b, reference);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(byte[] b, int off, int len) {
-        ((LinkedBufferInput) in).feed(b, off, len);
+        toLinkedInput().feed(b, off, len);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(byte[] b, int off, int len, boolean reference) {
-        ((LinkedBufferInput) in).feed(b, off, len, reference);
+        toLinkedInput().feed(b, off, len, reference);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(ByteBuffer b) {
-        ((LinkedBufferInput) in).feed(b);
+        toLinkedInput().feed(b);
         return this;
     }
 
     @Override
     public MessagePackBufferUnpacker feed(ByteBuffer buf, boolean reference) {
-        ((LinkedBufferInput) in).feed(buf, reference);
+        toLinkedInput().feed(buf, reference);
         return this;
     }
 
+    /**
+     * Notifies the listener when the data fed and not yet consumed reaches
+     * {@code highWaterMark} bytes, and again when it falls back to
+     * {@code lowWaterMark} bytes.
+     * 
+     * @see LinkedBufferInput#setWaterMarks(int, int, WaterMarkListener)
+     */
+    public void setWaterMarks(int highWaterMark, int lowWaterMark,
+            WaterMarkListener listener) {
+        linkedInput.setWaterMarks(highWaterMark, lowWaterMark, listener);
+    }
+
     @Override
     public int getBufferSize() {
-        return ((LinkedBufferInput) in).getSize();
+        if (in == arrayInput) {
+            return arrayInput.getSize();
+        }
+        return linkedInput.getSize();
     }
 
     @Override
     public void copyReferencedBuffer() {
-        ((LinkedBufferInput) in).copyReferencedBuffer();
+        toLinkedInput().copyReferencedBuffer();
     }
 
     @Override
     public void clear() {
-        ((LinkedBufferInput) in).clear();
+        toLinkedInput().clear();
         reset();
     }
+
+    @Override
+    public void reset() {
+        super.reset();
+        pendingValue = null;
+    }
+
+    @Override
+    public Value tryReadValue() throws IOException {
+        if (pendingValue == null) {
+            pendingValue = new Unconverter(msgpack);
+        }
+        try {
+            readValue(pendingValue);
+        } catch (EOFException e) {
+            return null;
+        }
+        Value v = pendingValue.getResult();
+        pendingValue.resetResult();
+        return v;
+    }
+
+    @Override
+    public <T> T tryRead(Template<T> tmpl) throws IOException {
+        Value v = tryReadValue();
+        if (v == null) {
+            return null;
+        }
+        // null is reserved for "more data is needed", so nil is an error
+        T o = tmpl.read(new Converter(msgpack, v), null, true);
+        if (o == null) {
+            throw new MessageTypeException("Unexpected nil value");
+        }
+        return o;
+    }
+
+    @Override
+    public int getReadByteCount() {
+        return linkedInput.getReadByteCount() + arrayInput.getReadByteCount();
+    }
+
+    @Override
+    public void resetReadByteCount() {
+        linkedInput.resetReadByteCount();
+        arrayInput.resetReadByteCount();
+    }
 }
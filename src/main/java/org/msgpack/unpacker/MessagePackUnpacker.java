@@ -18,34 +18,51 @@
 package org.msgpack.unpacker;
 
 import java.io.IOException;
-import java.io.EOFException;
+import java.io.File;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.channels.ReadableByteChannel;
+import org.msgpack.io.BufferedStreamInput;
+import org.msgpack.io.ChannelInput;
+import org.msgpack.io.EndOfBufferException;
 import org.msgpack.io.Input;
+import org.msgpack.io.MappedFileInput;
 import org.msgpack.io.StreamInput;
 import org.msgpack.io.BufferReferer;
 import org.msgpack.MessagePack;
 import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Unconverter;
+import org.msgpack.type.ExtValue;
 import org.msgpack.type.ValueType;
 
 public class MessagePackUnpacker extends AbstractUnpacker {
-    private static final byte REQUIRE_TO_READ_HEAD = (byte) 0xc6;
+    // 0xc1 is never used by the format
+    private static final byte REQUIRE_TO_READ_HEAD = (byte) 0xc1;
 
-    protected final Input in;
+    protected Input in;
     private final UnpackerStack stack = new UnpackerStack();
 
     private byte headByte = REQUIRE_TO_READ_HEAD;
 
     private byte[] raw;
+
+    // bytes of the body of a raw value read by readRawBody, or -1
+    private int rawRemaining = -1;
     private int rawFilled;
 
+    // raw holds the body of an ext value of extType
+    private boolean rawIsExt;
+    private byte extType;
+    // length of an ext value whose type has not been read yet, or -1
+    private int extLength = -1;
+
     private final IntAccept intAccept = new IntAccept();
     private final LongAccept longAccept = new LongAccept();
     private final BigIntegerAccept bigIntegerAccept = new BigIntegerAccept();
     private final DoubleAccept doubleAccept = new DoubleAccept();
     private final ByteArrayAccept byteArrayAccept = new ByteArrayAccept();
     private final StringAccept stringAccept = new StringAccept();
+    private final ExtAccept extAccept = new ExtAccept();
     private final ArrayAccept arrayAccept = new ArrayAccept();
     private final MapAccept mapAccept = new MapAccept();
     private final ValueAccept valueAccept = new ValueAccept();
@@ -55,6 +72,18 @@ public class MessagePackUnpacker extends AbstractUnpacker {
         this(msgpack, new StreamInput(stream));
     }
 
+    public MessagePackUnpacker(MessagePack msgpack, InputStream stream, int bufferSize) {
+        this(msgpack, new BufferedStreamInput(stream, bufferSize));
+    }
+
+    public MessagePackUnpacker(MessagePack msgpack, ReadableByteChannel channel) {
+        this(msgpack, new ChannelInput(channel));
+    }
+
+    public MessagePackUnpacker(MessagePack msgpack, File file) throws IOException {
+        this(msgpack, new MappedFileInput(file));
+    }
+
     protected MessagePackUnpacker(MessagePack msgpack, Input in) {
         super(msgpack);
         this.in = in;
@@ -78,11 +107,19 @@ public class MessagePackUnpacker extends AbstractUnpacker {
     final boolean readOneWithoutStack(Accept a) throws IOException {
         if (raw != null) {
             readRawBodyCont();
-            a.acceptRaw(raw);
+            if (rawIsExt) {
+                rawIsExt = false;
+                a.acceptExt(extType, raw);
+            } else {
+                a.acceptRaw(raw);
+            }
             raw = null;
             headByte = REQUIRE_TO_READ_HEAD;
             return true;
         }
+        if (extLength >= 0) {
+            return readExt(a, extLength);
+        }
 
         final int b = (int) getHeadByte();
 
@@ -204,54 +241,42 @@ public class MessagePackUnpacker extends AbstractUnpacker {
             in.advance();
             headByte = REQUIRE_TO_READ_HEAD;
             return true;
-        case 0xda: // raw 16
+        case 0xc4: // bin 8
+        case 0xd9: // str 8
+            return readRaw(a, in.getByte() & 0xff);
+        case 0xc5: // bin 16
+        case 0xda: // raw 16, str 16
+            return readRaw(a, in.getShort() & 0xffff);
+        case 0xc6: // bin 32
+        case 0xdb: // raw 32, str 32
+            return readRaw(a, in.getInt());
+        case 0xc7: // ext 8
         {
-            int count = in.getShort() & 0xffff;
-            if (count == 0) {
-                a.acceptEmptyRaw();
-                in.advance();
-                headByte = REQUIRE_TO_READ_HEAD;
-                return true;
-            }
-            if (count >= rawSizeLimit) {
-                String reason = String.format(
-                        "Size of raw (%d) over limit at %d",
-                        new Object[] { count, rawSizeLimit });
-                throw new SizeLimitException(reason);
-            }
+            int length = in.getByte() & 0xff;
+            checkExtLength(length);
             in.advance();
-            if (!tryReferRawBody(a, count)) {
-                readRawBody(count);
-                a.acceptRaw(raw);
-                raw = null;
-            }
-            headByte = REQUIRE_TO_READ_HEAD;
-            return true;
+            return readExt(a, length);
         }
-        case 0xdb: // raw 32
+        case 0xc8: // ext 16
         {
-            int count = in.getInt();
-            if (count == 0) {
-                a.acceptEmptyRaw();
-                in.advance();
-                headByte = REQUIRE_TO_READ_HEAD;
-                return true;
-            }
-            if (count < 0 || count >= rawSizeLimit) {
-                String reason = String.format(
-                        "Size of raw (%d) over limit at %d",
-                        new Object[] { count, rawSizeLimit });
-                throw new SizeLimitException(reason);
-            }
+            int length = in.getShort() & 0xffff;
+            checkExtLength(length);
             in.advance();
-            if (!tryReferRawBody(a, count)) {
-                readRawBody(count);
-                a.acceptRaw(raw);
-                raw = null;
-            }
-            headByte = REQUIRE_TO_READ_HEAD;
-            return true;
+            return readExt(a, length);
         }
+        case 0xc9: // ext 32
+        {
+            int length = in.getInt();
+            checkExtLength(length);
+            in.advance();
+            return readExt(a, length);
+        }
+        case 0xd4: // fixext 1
+        case 0xd5: // fixext 2
+        case 0xd6: // fixext 4
+        case 0xd7: // fixext 8
+        case 0xd8: // fixext 16
+            return readExt(a, 1 << ((b & 0xff) - 0xd4));
         case 0xdc: // array 16
         {
             int count = in.getShort() & 0xffff;
@@ -324,6 +349,64 @@ public class MessagePackUnpacker extends AbstractUnpacker {
         }
     }
 
+    /**
+     * reads the body of a raw, str or bin value whose size has been got from
+     * the input but not advanced yet.
+     */
+    private boolean readRaw(Accept a, int count) throws IOException {
+        if (count == 0) {
+            a.acceptEmptyRaw();
+            in.advance();
+            headByte = REQUIRE_TO_READ_HEAD;
+            return true;
+        }
+        if (count < 0 || count >= rawSizeLimit) {
+            String reason = String.format(
+                    "Size of raw (%d) over limit at %d",
+                    new Object[] { count, rawSizeLimit });
+            throw new SizeLimitException(reason);
+        }
+        in.advance();
+        if (!tryReferRawBody(a, count)) {
+            readRawBody(count);
+            a.acceptRaw(raw);
+            raw = null;
+        }
+        headByte = REQUIRE_TO_READ_HEAD;
+        return true;
+    }
+
+    private void checkExtLength(int length) throws IOException {
+        if (length < 0 || length >= rawSizeLimit) {
+            String reason = String.format(
+                    "Size of ext (%d) over limit at %d",
+                    new Object[] { length, rawSizeLimit });
+            throw new SizeLimitException(reason);
+        }
+    }
+
+    /**
+     * reads the type and the body of an ext value whose length has been
+     * read.
+     */
+    private boolean readExt(Accept a, int length) throws IOException {
+        extLength = length;
+        extType = in.getByte();
+        in.advance();
+        extLength = -1;
+        if (length == 0) {
+            a.acceptExt(extType, new byte[0]);
+        } else {
+            rawIsExt = true;
+            readRawBody(length);
+            rawIsExt = false;
+            a.acceptExt(extType, raw);
+            raw = null;
+        }
+        headByte = REQUIRE_TO_READ_HEAD;
+        return true;
+    }
+
     private boolean tryReferRawBody(BufferReferer referer, int size) throws IOException {
         return in.tryRefer(referer, size);
     }
@@ -338,7 +421,7 @@ public class MessagePackUnpacker extends AbstractUnpacker {
         int len = in.read(raw, rawFilled, raw.length - rawFilled);
         rawFilled += len;
         if (rawFilled < raw.length) {
-            throw new EOFException();
+            throw new EndOfBufferException();
         }
     }
 
@@ -473,6 +556,214 @@ public class MessagePackUnpacker extends AbstractUnpacker {
         return stringAccept.value;
     }
 
+    @Override
+    public ExtValue readExt() throws IOException {
+        readOne(extAccept);
+        return extAccept.value;
+    }
+
+    @Override
+    public int readRawBegin() throws IOException {
+        if (rawRemaining >= 0) {
+            throw new MessageTypeException(
+                    "readRawBegin() is called while the previous raw value is not ended");
+        }
+        stack.checkCount();
+        final int b = getHeadByte() & 0xff;
+        int size;
+        if ((b & 0xe0) == 0xa0) { // FixRaw
+            size = b & 0x1f;
+        } else {
+            switch (b) {
+            case 0xc4: // bin 8
+            case 0xd9: // str 8
+                size = in.getByte() & 0xff;
+                break;
+            case 0xc5: // bin 16
+            case 0xda: // raw 16, str 16
+                size = in.getShort() & 0xffff;
+                break;
+            case 0xc6: // bin 32
+            case 0xdb: // raw 32, str 32
+                size = in.getInt();
+                if (size < 0) {
+                    throw new SizeLimitException(String.format(
+                            "Size of raw (%d) over limit at %d",
+                            new Object[] { size & 0xffffffffL, Integer.MAX_VALUE }));
+                }
+                break;
+            default:
+                throw new MessageTypeException("Expected raw value but got not raw value");
+            }
+            in.advance();
+        }
+        headByte = REQUIRE_TO_READ_HEAD;
+        rawRemaining = size;
+        return size;
+    }
+
+    @Override
+    public int readRawBody(byte[] b, int off, int len) throws IOException {
+        if (rawRemaining < 0) {
+            throw new MessageTypeException(
+                    "readRawBody() is called but readRawBegin() is not called");
+        }
+        int n = in.read(b, off, Math.min(len, rawRemaining));
+        rawRemaining -= n;
+        return n;
+    }
+
+    @Override
+    public void readRawEnd() throws IOException {
+        if (rawRemaining != 0) {
+            throw new MessageTypeException(
+                    "readRawEnd() is called but the raw body is not read completely");
+        }
+        rawRemaining = -1;
+        stack.reduceCount();
+    }
+
+    // The readArray methods decode the common formats of their elements
+    // inline and leave the rest to readOneWithoutStack. The elements are
+    // counted directly, as they are known to be inside the array.
+
+    @Override
+    public int[] readArray(int[] to) throws IOException {
+        int n = readArrayBegin();
+        int[] array = to != null && to.length == n ? to : new int[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readIntElement();
+            stack.reduceCount();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public long[] readArray(long[] to) throws IOException {
+        int n = readArrayBegin();
+        long[] array = to != null && to.length == n ? to : new long[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readLongElement();
+            stack.reduceCount();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public float[] readArray(float[] to) throws IOException {
+        int n = readArrayBegin();
+        float[] array = to != null && to.length == n ? to : new float[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = (float) readDoubleElement();
+            stack.reduceCount();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    @Override
+    public double[] readArray(double[] to) throws IOException {
+        int n = readArrayBegin();
+        double[] array = to != null && to.length == n ? to : new double[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = readDoubleElement();
+            stack.reduceCount();
+        }
+        readArrayEnd();
+        return array;
+    }
+
+    private int readIntElement() throws IOException {
+        final int b = getHeadByte();
+        if ((b & 0x80) == 0 || (b & 0xe0) == 0xe0) { // fixnum
+            headByte = REQUIRE_TO_READ_HEAD;
+            return b;
+        }
+        int v;
+        switch (b & 0xff) {
+        case 0xcc: // unsigned int 8
+            v = in.getByte() & 0xff;
+            break;
+        case 0xcd: // unsigned int 16
+            v = in.getShort() & 0xffff;
+            break;
+        case 0xd0: // signed int 8
+            v = in.getByte();
+            break;
+        case 0xd1: // signed int 16
+            v = in.getShort();
+            break;
+        case 0xd2: // signed int 32
+            v = in.getInt();
+            break;
+        default:
+            readOneWithoutStack(intAccept);
+            return intAccept.value;
+        }
+        in.advance();
+        headByte = REQUIRE_TO_READ_HEAD;
+        return v;
+    }
+
+    private long readLongElement() throws IOException {
+        final int b = getHeadByte();
+        if ((b & 0x80) == 0 || (b & 0xe0) == 0xe0) { // fixnum
+            headByte = REQUIRE_TO_READ_HEAD;
+            return b;
+        }
+        long v;
+        switch (b & 0xff) {
+        case 0xcc: // unsigned int 8
+            v = in.getByte() & 0xff;
+            break;
+        case 0xcd: // unsigned int 16
+            v = in.getShort() & 0xffff;
+            break;
+        case 0xce: // unsigned int 32
+            v = in.getInt() & 0xffffffffL;
+            break;
+        case 0xd0: // signed int 8
+            v = in.getByte();
+            break;
+        case 0xd1: // signed int 16
+            v = in.getShort();
+            break;
+        case 0xd2: // signed int 32
+            v = in.getInt();
+            break;
+        case 0xd3: // signed int 64
+            v = in.getLong();
+            break;
+        default:
+            readOneWithoutStack(longAccept);
+            return longAccept.value;
+        }
+        in.advance();
+        headByte = REQUIRE_TO_READ_HEAD;
+        return v;
+    }
+
+    private double readDoubleElement() throws IOException {
+        final int b = getHeadByte();
+        double v;
+        switch (b & 0xff) {
+        case 0xca: // float
+            v = in.getFloat();
+            break;
+        case 0xcb: // double
+            v = in.getDouble();
+            break;
+        default:
+            readOneWithoutStack(doubleAccept);
+            return doubleAccept.value;
+        }
+        in.advance();
+        headByte = REQUIRE_TO_READ_HEAD;
+        return v;
+    }
+
     @Override
     public int readArrayBegin() throws IOException {
         readOne(arrayAccept);
@@ -614,9 +905,22 @@ public class MessagePackUnpacker extends AbstractUnpacker {
         case 0xd2: // signed int 32
         case 0xd3: // signed int 64
             return ValueType.INTEGER;
-        case 0xda: // raw 16
-        case 0xdb: // raw 32
+        case 0xc4: // bin 8
+        case 0xc5: // bin 16
+        case 0xc6: // bin 32
+        case 0xd9: // str 8
+        case 0xda: // raw 16, str 16
+        case 0xdb: // raw 32, str 32
             return ValueType.RAW;
+        case 0xc7: // ext 8
+        case 0xc8: // ext 16
+        case 0xc9: // ext 32
+        case 0xd4: // fixext 1
+        case 0xd5: // fixext 2
+        case 0xd6: // fixext 4
+        case 0xd7: // fixext 8
+        case 0xd8: // fixext 16
+            return ValueType.EXT;
         case 0xdc: // array 16
         case 0xdd: // array 32
             return ValueType.ARRAY;
@@ -630,6 +934,9 @@ public class MessagePackUnpacker extends AbstractUnpacker {
 
     public void reset() {
         raw = null;
+        rawRemaining = -1;
+        rawIsExt = false;
+        extLength = -1;
         stack.clear();
     }
 
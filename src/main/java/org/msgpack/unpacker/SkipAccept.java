@@ -69,6 +69,10 @@ final class SkipAccept extends Accept {
     public void refer(ByteBuffer bb, boolean gift) throws IOException {
     }
 
+    @Override
+    void acceptExt(byte type, byte[] data) {
+    }
+
     @Override
     void acceptArray(int size) {
     }
@@ -18,12 +18,16 @@
 package org.msgpack.unpacker;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.math.BigInteger;
 import java.lang.Iterable;
 
 import org.msgpack.template.Template;
+import org.msgpack.type.ExtValue;
+import org.msgpack.type.RawMessage;
 import org.msgpack.type.Value;
 import org.msgpack.type.ValueType;
 
@@ -81,8 +85,57 @@ public interface Unpacker extends Iterable<Value>, Closeable {
 
     public String readString() throws IOException;
 
+    public ExtValue readExt() throws IOException;
+
+    /**
+     * Reads the header of a raw value and returns the size of its body,
+     * which is then read with {@link #readRawBody(byte[], int, int)} and
+     * closed with {@link #readRawEnd()}. Unlike {@link #readByteArray()},
+     * the body is not held in memory as a whole, so the raw size limit does
+     * not apply.
+     */
+    public int readRawBegin() throws IOException;
+
+    /**
+     * Reads up to {@code len} bytes of the body of the raw value begun by
+     * {@link #readRawBegin()}.
+     * 
+     * @return the number of bytes read
+     */
+    public int readRawBody(byte[] b, int off, int len) throws IOException;
+
+    public void readRawEnd() throws IOException;
+
+    /**
+     * Copies the body of the next raw value to the stream in constant
+     * memory.
+     * 
+     * @return the size of the body
+     */
+    public long readRaw(OutputStream out) throws IOException;
+
+    public long readRaw(WritableByteChannel out) throws IOException;
+
+    /**
+     * Reads an array of numbers as a whole, into {@code to} if its length
+     * matches the array's and into a new array otherwise, and returns it.
+     */
+    public int[] readArray(int[] to) throws IOException;
+
+    public long[] readArray(long[] to) throws IOException;
+
+    public float[] readArray(float[] to) throws IOException;
+
+    public double[] readArray(double[] to) throws IOException;
+
     public Value readValue() throws IOException;
 
+    /**
+     * Reads the next object as a {@link RawMessage} holding its MessagePack
+     * encoding, which can be written to a packer later without decoding.
+     */
+    public RawMessage readRawMessage() throws IOException;
+
     public ValueType getNextType() throws IOException;
 
     public UnpackerIterator iterator();
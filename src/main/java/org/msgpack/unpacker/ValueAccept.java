@@ -104,6 +104,11 @@ final class ValueAccept extends Accept {
         uc.write(ValueFactory.createRawValue(raw, true));
     }
 
+    @Override
+    void acceptExt(byte type, byte[] data) throws IOException {
+        uc.write(ValueFactory.createExtValue(type, data, true));
+    }
+
     @Override
     void acceptArray(int size) throws IOException {
         uc.writeArrayBegin(size);
@@ -0,0 +1,404 @@
+//
+// MessagePack for Java
+//
+// Copyright (C) 2009 - 2013 FURUHASHI Sadayuki
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+package org.msgpack.util;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.msgpack.template.builder.GeneratedTemplateBuilder;
+
+/**
+ * Annotation processor that generates templates of classes annotated with
+ * <code>@Message</code> or <code>@Beans</code> as plain Java sources during
+ * compilation. The generated templates are picked up by
+ * {@link GeneratedTemplateBuilder}, so that no template class has to be
+ * generated with Javassist at runtime.
+ * 
+ * <pre>
+ * javac -processor org.msgpack.util.TemplateAnnotationProcessor ...
+ * </pre>
+ * 
+ * Classes whose template cannot be generated are reported as warnings and
+ * keep using the runtime template builders.
+ */
+@SupportedAnnotationTypes({
+        "org.msgpack.annotation.Message",
+        "org.msgpack.annotation.MessagePackMessage",
+        "org.msgpack.annotation.Beans",
+        "org.msgpack.annotation.MessagePackBeans" })
+public class TemplateAnnotationProcessor extends AbstractProcessor {
+
+    private static final String MESSAGE = "org.msgpack.annotation.Message";
+
+    private static final String MESSAGE_PACK_MESSAGE = "org.msgpack.annotation.MessagePackMessage";
+
+    private static final String BEANS = "org.msgpack.annotation.Beans";
+
+    private static final String MESSAGE_PACK_BEANS = "org.msgpack.annotation.MessagePackBeans";
+
+    /**
+     * a member of the target class that generated code reads and writes.
+     */
+    private static class Member {
+        String key;
+        TypeMirror type;
+        // expressions; "$v" stands for the target object
+        String getter;
+        String setter;
+        boolean isBeanProperty;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> targets = new HashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (e.getKind() == ElementKind.CLASS) {
+                    targets.add((TypeElement) e);
+                }
+            }
+        }
+        for (TypeElement target : targets) {
+            try {
+                String reason = checkTarget(target);
+                if (reason != null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                            "Cannot generate template: " + reason, target);
+                    continue;
+                }
+                generate(target);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Cannot write template: " + e, target);
+            }
+        }
+        return false;
+    }
+
+    private String checkTarget(TypeElement target) {
+        if (target.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "abstract class";
+        }
+        for (Element e = target; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (t.getModifiers().contains(Modifier.PRIVATE)) {
+                return "private class";
+            }
+            if (t.getNestingKind() == NestingKind.LOCAL
+                    || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                return "local class";
+            }
+            if (t.getNestingKind() == NestingKind.MEMBER
+                    && !t.getModifiers().contains(Modifier.STATIC)) {
+                return "inner class";
+            }
+        }
+        boolean hasConstructor = false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(target.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+            }
+        }
+        if (!hasConstructor) {
+            return "no accessible constructor without parameters";
+        }
+        return null;
+    }
+
+    private static boolean hasAnnotation(Element e, String name) {
+        for (javax.lang.model.element.AnnotationMirror a : e.getAnnotationMirrors()) {
+            if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement target) throws IOException {
+        // same rule as TemplateBuilderChain: @Message wins over @Beans
+        boolean beans = !hasAnnotation(target, MESSAGE)
+                && !hasAnnotation(target, MESSAGE_PACK_MESSAGE)
+                && (hasAnnotation(target, BEANS) || hasAnnotation(target, MESSAGE_PACK_BEANS));
+        List<Member> members = beans ? collectProperties(target) : collectFields(target);
+
+        String packageName = getPackage(target).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(target).toString();
+        String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                + GeneratedTemplateBuilder.SUFFIX;
+        String targetName = erasure(target.asType());
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? simpleName : packageName + "." + simpleName, target);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            out.printf("// generated by %s%n", getClass().getName());
+            if (!packageName.isEmpty()) {
+                out.printf("package %s;%n%n", packageName);
+            }
+            out.printf("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })%n");
+            out.printf("public final class %s extends org.msgpack.template.builder.AbstractGeneratedTemplate<%s> {%n",
+                    simpleName, targetName);
+            out.printf("    private static final String[] MEMBERS = new String[] {%n");
+            for (Member m : members) {
+                out.printf("        \"%s\",%n", m.key);
+            }
+            out.printf("    };%n%n");
+
+            out.printf("    public %s(org.msgpack.template.TemplateRegistry registry,%n"
+                    + "            org.msgpack.template.builder.FieldEntry[] entries) {%n", simpleName);
+            out.printf("        super(registry, %s.class, entries, MEMBERS);%n", targetName);
+            out.printf("    }%n%n");
+
+            out.printf("    @Override%n");
+            out.printf("    protected %s newInstance() {%n", targetName);
+            out.printf("        return new %s();%n", targetName);
+            out.printf("    }%n%n");
+
+            out.printf("    @Override%n");
+            out.printf("    protected void writeMember(org.msgpack.packer.Packer pk, %s v, int member, int index)%n"
+                    + "            throws java.io.IOException {%n", targetName);
+            out.printf("        switch (member) {%n");
+            for (int i = 0; i < members.size(); i++) {
+                Member m = members.get(i);
+                String value = m.getter.replace("$v", "v");
+                out.printf("        case %d:%n", i);
+                if (m.type.getKind() == TypeKind.CHAR) {
+                    out.printf("            pk.write((int) %s);%n", value);
+                } else if (m.type.getKind().isPrimitive()) {
+                    out.printf("            pk.write(%s);%n", value);
+                } else {
+                    out.printf("            writeValue(pk, %s, index);%n", value);
+                }
+                out.printf("            break;%n");
+            }
+            out.printf("        }%n");
+            out.printf("    }%n%n");
+
+            out.printf("    @Override%n");
+            out.printf("    protected void readMember(org.msgpack.unpacker.Unpacker u, %s to, int member, int index)%n"
+                    + "            throws java.io.IOException {%n", targetName);
+            out.printf("        switch (member) {%n");
+            for (int i = 0; i < members.size(); i++) {
+                Member m = members.get(i);
+                out.printf("        case %d:%n", i);
+                if (m.type.getKind().isPrimitive()) {
+                    out.printf("            %s;%n", m.setter.replace("$v", "to").replace("$x",
+                            primitiveReadExpression(m.type.getKind())));
+                } else if (m.isBeanProperty) {
+                    // the setter is called only when a new object is read
+                    out.printf("            {%n");
+                    out.printf("                Object f = %s;%n", m.getter.replace("$v", "to"));
+                    out.printf("                Object o = readValue(u, f, index);%n");
+                    out.printf("                if (o != f) {%n");
+                    out.printf("                    %s;%n", m.setter.replace("$v", "to").replace("$x",
+                            "(" + erasure(m.type) + ") o"));
+                    out.printf("                }%n");
+                    out.printf("            }%n");
+                } else {
+                    out.printf("            %s;%n", m.setter.replace("$v", "to").replace("$x",
+                            "(" + erasure(m.type) + ") readValue(u, " + m.getter.replace("$v", "to") + ", index)"));
+                }
+                out.printf("            break;%n");
+            }
+            out.printf("        }%n");
+            out.printf("    }%n");
+            out.printf("}%n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * collects the fields that the generated template can access directly.
+     * The other fields are accessed through reflection at runtime.
+     */
+    private List<Member> collectFields(TypeElement target) {
+        PackageElement pkg = getPackage(target);
+        List<Member> members = new ArrayList<Member>();
+        for (TypeElement t = target; t != null; t = getSuperclass(t)) {
+            String owner = t == target ? "$v" : "((" + erasure(t.asType()) + ") $v)";
+            for (VariableElement f : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                Set<Modifier> mod = f.getModifiers();
+                if (mod.contains(Modifier.STATIC) || mod.contains(Modifier.FINAL)
+                        || mod.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (!isAccessible(f, t, pkg)) {
+                    continue;
+                }
+                Member m = new Member();
+                m.key = processingEnv.getElementUtils().getBinaryName(t) + "#" + f.getSimpleName();
+                m.type = f.asType();
+                m.getter = owner + "." + f.getSimpleName();
+                m.setter = m.getter + " = $x";
+                members.add(m);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * collects the properties that have a public getter and a public setter.
+     */
+    private List<Member> collectProperties(TypeElement target) {
+        Map<String, ExecutableElement> getters = new LinkedHashMap<String, ExecutableElement>();
+        Map<String, ExecutableElement> setters = new LinkedHashMap<String, ExecutableElement>();
+        for (ExecutableElement m : ElementFilter.methodsIn(
+                processingEnv.getElementUtils().getAllMembers(target))) {
+            Set<Modifier> mod = m.getModifiers();
+            if (!mod.contains(Modifier.PUBLIC) || mod.contains(Modifier.STATIC)) {
+                continue;
+            }
+            String name = m.getSimpleName().toString();
+            int params = m.getParameters().size();
+            TypeKind ret = m.getReturnType().getKind();
+            if (params == 0 && name.startsWith("get") && name.length() > 3 && ret != TypeKind.VOID) {
+                getters.put(decapitalize(name.substring(3)), m);
+            } else if (params == 0 && name.startsWith("is") && name.length() > 2
+                    && ret == TypeKind.BOOLEAN) {
+                getters.put(decapitalize(name.substring(2)), m);
+            } else if (params == 1 && name.startsWith("set") && name.length() > 3) {
+                setters.put(decapitalize(name.substring(3)), m);
+            }
+        }
+
+        List<Member> members = new ArrayList<Member>();
+        for (Map.Entry<String, ExecutableElement> e : getters.entrySet()) {
+            ExecutableElement getter = e.getValue();
+            ExecutableElement setter = setters.get(e.getKey());
+            if (setter == null || !processingEnv.getTypeUtils().isSameType(
+                    getter.getReturnType(), setter.getParameters().get(0).asType())) {
+                continue;
+            }
+            if (!isAccessible(getter, (TypeElement) getter.getEnclosingElement(), getPackage(target))
+                    || !isAccessible(setter, (TypeElement) setter.getEnclosingElement(), getPackage(target))) {
+                continue;
+            }
+            Member m = new Member();
+            m.key = e.getKey();
+            m.type = getter.getReturnType();
+            m.getter = "$v." + getter.getSimpleName() + "()";
+            m.setter = "$v." + setter.getSimpleName() + "($x)";
+            m.isBeanProperty = true;
+            members.add(m);
+        }
+        return members;
+    }
+
+    private boolean isAccessible(Element member, TypeElement owner, PackageElement pkg) {
+        Set<Modifier> mod = member.getModifiers();
+        if (mod.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (getPackage(owner).equals(pkg)) {
+            return true;
+        }
+        if (!mod.contains(Modifier.PUBLIC)) {
+            return false;
+        }
+        for (Element e = owner; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TypeElement getSuperclass(TypeElement t) {
+        TypeMirror s = t.getSuperclass();
+        if (s.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement e = (TypeElement) ((DeclaredType) s).asElement();
+        if (e.getQualifiedName().contentEquals(Object.class.getName())) {
+            return null;
+        }
+        return e;
+    }
+
+    private PackageElement getPackage(Element e) {
+        return processingEnv.getElementUtils().getPackageOf(e);
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String primitiveReadExpression(TypeKind kind) {
+        switch (kind) {
+        case BOOLEAN:
+            return "u.readBoolean()";
+        case BYTE:
+            return "u.readByte()";
+        case SHORT:
+            return "u.readShort()";
+        case INT:
+            return "u.readInt()";
+        case LONG:
+            return "u.readLong()";
+        case FLOAT:
+            return "u.readFloat()";
+        case DOUBLE:
+            return "u.readDouble()";
+        case CHAR:
+            return "(char) u.readInt()";
+        default:
+            throw new IllegalArgumentException(kind.toString());
+        }
+    }
+
+    // same as java.beans.Introspector#decapitalize
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1))
+                && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -22,6 +22,8 @@ import java.io.Reader;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import org.msgpack.MessagePack;
+import org.msgpack.template.Template;
+import org.msgpack.type.Value;
 import org.msgpack.unpacker.BufferUnpacker;
 
 public class JSONBufferUnpacker extends JSONUnpacker implements BufferUnpacker {
@@ -115,6 +117,18 @@ public class JSONBufferUnpacker extends JSONUnpacker implements BufferUnpacker {
         in = newEmptyReader();
     }
 
+    @Override
+    public Value tryReadValue() {
+        throw new UnsupportedOperationException(
+                "JSONBufferUnpacker doesn't support tryReadValue()");
+    }
+
+    @Override
+    public <T> T tryRead(Template<T> tmpl) {
+        throw new UnsupportedOperationException(
+                "JSONBufferUnpacker doesn't support tryRead()");
+    }
+
     private static Reader newEmptyReader() {
         return new InputStreamReader(new ByteArrayInputStream(new byte[0]));
     }
@@ -0,0 +1,170 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
+import org.msgpack.template.Templates;
+import org.msgpack.unpacker.BufferUnpacker;
+
+public class TestDeferredSize {
+
+    private static final int[] SIZES = { 0, 1, 15, 16, 100, 65535, 65536, 70000 };
+
+    @Test
+    public void testArray() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        for (int bufferSize : new int[] { 16, 512, 1 << 20 }) {
+            for (int size : SIZES) {
+                List<Integer> list = new ArrayList<Integer>();
+                for (int i = 0; i < size; i++) {
+                    list.add(i);
+                }
+
+                BufferPacker pk = msgpack.createBufferPacker(bufferSize);
+                pk.write("before");
+                pk.writeArrayBegin();
+                for (Iterator<Integer> it = list.iterator(); it.hasNext();) {
+                    pk.write(it.next());
+                }
+                pk.writeArrayEnd();
+                pk.write("after");
+                byte[] b = pk.toByteArray();
+
+                BufferPacker expected = msgpack.createBufferPacker();
+                expected.write("before");
+                expected.write(list);
+                expected.write("after");
+                byte[] e = expected.toByteArray();
+                if (bufferSize == 1 << 20 || size < 16 && bufferSize == 512) {
+                    // still in the first chunk, so the header was compacted
+                    assertArrayEquals(e, b);
+                }
+
+                BufferUnpacker u = msgpack.createBufferUnpacker(b);
+                assertEquals("before", u.readString());
+                assertEquals(list, u.read(Templates.tList(Templates.TInteger)));
+                assertEquals("after", u.readString());
+            }
+        }
+    }
+
+    @Test
+    public void testMultiChunkContainers() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        List<Integer> list = new ArrayList<Integer>();
+        Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < 300; i++) {
+            list.add(i);
+            map.put("k" + i, i);
+        }
+
+        // the default chunk size is far smaller than either container, so
+        // their headers cannot be compacted; only the values are compared
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin();
+        for (Integer v : list) {
+            pk.write(v);
+        }
+        pk.writeArrayEnd();
+        pk.writeMapBegin();
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            pk.write(e.getKey());
+            pk.write(e.getValue());
+        }
+        pk.writeMapEnd();
+        byte[] b = pk.toByteArray();
+
+        BufferPacker sized = msgpack.createBufferPacker();
+        sized.write(list);
+        sized.write(map);
+        assertTrue(b.length <= sized.toByteArray().length + 8);
+
+        BufferUnpacker u = msgpack.createBufferUnpacker(b);
+        assertEquals(list, u.read(Templates.tList(Templates.TInteger)));
+        assertEquals(map, u.read(Templates.tMap(Templates.TString, Templates.TInteger)));
+    }
+
+    @Test
+    public void testNestedMapAndArray() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        Map<String, List<Integer>> map = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            List<Integer> list = new ArrayList<Integer>();
+            for (int j = 0; j < i; j++) {
+                list.add(j * 1000);
+            }
+            map.put("key" + i, list);
+        }
+
+        for (int bufferSize : new int[] { 16, 512, 1 << 16 }) {
+            BufferPacker pk = msgpack.createBufferPacker(bufferSize);
+            pk.writeArrayBegin(2);
+            pk.writeMapBegin();
+            for (Map.Entry<String, List<Integer>> e : map.entrySet()) {
+                pk.write(e.getKey());
+                pk.writeArrayBegin();
+                for (Integer v : e.getValue()) {
+                    pk.write(v);
+                }
+                pk.writeArrayEnd();
+            }
+            pk.writeMapEnd();
+            pk.write(true);
+            pk.writeArrayEnd();
+            byte[] b = pk.toByteArray();
+
+            if (bufferSize == 1 << 16) {
+                BufferPacker expected = msgpack.createBufferPacker();
+                expected.writeArrayBegin(2);
+                expected.write(map);
+                expected.write(true);
+                expected.writeArrayEnd();
+                assertArrayEquals(expected.toByteArray(), b);
+            }
+
+            BufferUnpacker u = msgpack.createBufferUnpacker(b);
+            assertEquals(2, u.readArrayBegin());
+            assertEquals(map, u.read(Templates.tMap(Templates.TString,
+                    Templates.tList(Templates.TInteger))));
+            assertEquals(true, u.readBoolean());
+            u.readArrayEnd();
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeMapBegin();
+        pk.write("key");
+        try {
+            pk.writeMapEnd();
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+
+        Packer spk = msgpack.createPacker(new ByteArrayOutputStream());
+        try {
+            spk.writeArrayBegin();
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+
+        // the packer is usable again after clear()
+        pk.clear();
+        pk.writeArrayBegin().write(1).writeArrayEnd();
+        assertArrayEquals(new byte[] { (byte) 0x91, 1 }, pk.toByteArray());
+    }
+}
@@ -0,0 +1,244 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.BufferUnpacker;
+import org.msgpack.unpacker.Converter;
+import org.msgpack.unpacker.Unpacker;
+
+public class TestPrimitiveArrays {
+
+    private static final long[] EDGES = { 0, 1, -1, 31, -32, -33, 127, 128, -128, -129,
+            255, 256, 32767, 32768, -32768, -32769, 65535, 65536,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 31, 1L << 32,
+            -(1L << 31) - 1, Long.MAX_VALUE, Long.MIN_VALUE };
+
+    private static long[] longs(int len) {
+        Random rand = new Random(len);
+        long[] a = new long[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = i < EDGES.length ? EDGES[i] : rand.nextLong() >> rand.nextInt(64);
+        }
+        return a;
+    }
+
+    private static int[] ints(int len) {
+        long[] l = longs(len);
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = (int) l[i];
+        }
+        return a;
+    }
+
+    private static double[] doubles(int len) {
+        Random rand = new Random(len);
+        double[] a = new double[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = rand.nextGaussian() * 1000;
+        }
+        if (len > 3) {
+            a[0] = Double.NaN;
+            a[1] = Double.NEGATIVE_INFINITY;
+            a[2] = -0.0;
+        }
+        return a;
+    }
+
+    private static float[] floats(int len) {
+        double[] d = doubles(len);
+        float[] a = new float[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = (float) d[i];
+        }
+        return a;
+    }
+
+    private static final int[] SIZES = { 0, 1, 15, 16, 100, 65536 };
+
+    // both the in-place path of buffer packers and the copying path of
+    // stream packers, compared with writing each element
+    private static void assertSameBytes(MessagePack msgpack, BufferPacker expected,
+            Object array) throws Exception {
+        byte[] b = expected.toByteArray();
+        for (int bufferSize : new int[] { 9, 512, 8192 }) {
+            BufferPacker pk = msgpack.createBufferPacker(bufferSize);
+            writeArray(pk, array);
+            assertArrayEquals(b, pk.toByteArray());
+        }
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        Packer pk = msgpack.createPacker(bo);
+        writeArray(pk, array);
+        pk.flush();
+        assertArrayEquals(b, bo.toByteArray());
+    }
+
+    private static void writeArray(Packer pk, Object array) throws Exception {
+        if (array instanceof int[]) {
+            pk.writeArray((int[]) array, 0, ((int[]) array).length);
+        } else if (array instanceof long[]) {
+            pk.writeArray((long[]) array, 0, ((long[]) array).length);
+        } else if (array instanceof float[]) {
+            pk.writeArray((float[]) array, 0, ((float[]) array).length);
+        } else {
+            pk.writeArray((double[]) array, 0, ((double[]) array).length);
+        }
+    }
+
+    @Test
+    public void testInt() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        for (int size : SIZES) {
+            int[] a = ints(size);
+            BufferPacker expected = msgpack.createBufferPacker();
+            expected.writeArrayBegin(size);
+            for (int v : a) {
+                expected.write(v);
+            }
+            expected.writeArrayEnd();
+            assertSameBytes(msgpack, expected, a);
+
+            byte[] b = expected.toByteArray();
+            assertArrayEquals(a, msgpack.createBufferUnpacker(b).readArray(new int[0]));
+            assertArrayEquals(a, msgpack.createUnpacker(new ByteArrayInputStream(b))
+                    .readArray(new int[0]));
+            Converter conv = new Converter(msgpack, msgpack.read(b));
+            assertArrayEquals(a, conv.readArray(new int[0]));
+        }
+    }
+
+    @Test
+    public void testLong() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        for (int size : SIZES) {
+            long[] a = longs(size);
+            BufferPacker expected = msgpack.createBufferPacker();
+            expected.writeArrayBegin(size);
+            for (long v : a) {
+                expected.write(v);
+            }
+            expected.writeArrayEnd();
+            assertSameBytes(msgpack, expected, a);
+
+            byte[] b = expected.toByteArray();
+            assertArrayEquals(a, msgpack.createBufferUnpacker(b).readArray(new long[0]));
+            assertArrayEquals(a, msgpack.createUnpacker(new ByteArrayInputStream(b))
+                    .readArray(new long[0]));
+        }
+    }
+
+    @Test
+    public void testFloatDouble() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        for (int size : SIZES) {
+            float[] f = floats(size);
+            BufferPacker expected = msgpack.createBufferPacker();
+            expected.writeArrayBegin(size);
+            for (float v : f) {
+                expected.write(v);
+            }
+            expected.writeArrayEnd();
+            assertSameBytes(msgpack, expected, f);
+            assertArrayEquals(f, msgpack.createBufferUnpacker(expected.toByteArray())
+                    .readArray(new float[0]), 0.0f);
+
+            double[] d = doubles(size);
+            expected = msgpack.createBufferPacker();
+            expected.writeArrayBegin(size);
+            for (double v : d) {
+                expected.write(v);
+            }
+            expected.writeArrayEnd();
+            assertSameBytes(msgpack, expected, d);
+            assertArrayEquals(d, msgpack.createBufferUnpacker(expected.toByteArray())
+                    .readArray(new double[0]), 0.0);
+        }
+    }
+
+    @Test
+    public void testMixedFormats() throws Exception {
+        // float and double formats are read into either array, any integer
+        // format into long[]
+        MessagePack msgpack = new MessagePack();
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(2);
+        pk.write(1.5f);
+        pk.write(2.25);
+        pk.writeArrayEnd();
+        assertArrayEquals(new double[] { 1.5, 2.25 },
+                msgpack.createBufferUnpacker(pk.toByteArray()).readArray(new double[0]), 0.0);
+        assertArrayEquals(new float[] { 1.5f, 2.25f },
+                msgpack.createBufferUnpacker(pk.toByteArray()).readArray(new float[0]), 0.0f);
+
+        pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(3);
+        pk.write((byte) -7);
+        pk.write(BigInteger.valueOf(Long.MAX_VALUE));
+        pk.write(300);
+        pk.writeArrayEnd();
+        assertArrayEquals(new long[] { -7, Long.MAX_VALUE, 300 },
+                msgpack.createBufferUnpacker(pk.toByteArray()).readArray(new long[0]));
+
+        pk = msgpack.createBufferPacker();
+        pk.writeArray(new long[] { 1L << 40 }, 0, 1);
+        try {
+            msgpack.createBufferUnpacker(pk.toByteArray()).readArray(new int[0]);
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+    }
+
+    @Test
+    public void testRangeAndNesting() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        int[] a = ints(50);
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(3);
+        pk.writeArray(a, 10, 20);
+        pk.writeArray(new double[0], 0, 0);
+        pk.write("end");
+        pk.writeArrayEnd();
+
+        BufferUnpacker u = msgpack.createBufferUnpacker(pk.toByteArray());
+        assertEquals(3, u.readArrayBegin());
+        int[] to = new int[20];
+        assertSame(to, u.readArray(to));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(a[10 + i], to[i]);
+        }
+        assertEquals(0, u.readArray(new double[3]).length);
+        assertEquals("end", u.readString());
+        u.readArrayEnd();
+
+        try {
+            pk.writeArray(a, 40, 20);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testTemplates() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        int[] a = ints(100);
+        long[] l = longs(100);
+        double[] d = doubles(100);
+        assertArrayEquals(a, msgpack.read(msgpack.write(a), int[].class));
+        assertArrayEquals(l, msgpack.read(msgpack.write(l), long[].class));
+        assertArrayEquals(d, msgpack.read(msgpack.write(d), double[].class), 0.0);
+
+        Unpacker u = msgpack.createUnpacker(new ByteArrayInputStream(msgpack.write(a)));
+        assertArrayEquals(a, u.read(int[].class));
+    }
+}
@@ -0,0 +1,147 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.template.Templates;
+import org.msgpack.type.RawMessage;
+import org.msgpack.type.Value;
+import org.msgpack.unpacker.BufferUnpacker;
+import org.msgpack.util.json.JSON;
+
+public class TestRawMessage {
+
+    private static byte[] profile(MessagePack msgpack) throws Exception {
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeMapBegin(3);
+        pk.write("name").write("alice");
+        pk.write("age").write(30);
+        pk.write("tags");
+        pk.writeArrayBegin(2).write("a").write(new byte[300]).writeArrayEnd();
+        pk.writeMapEnd();
+        return pk.toByteArray();
+    }
+
+    @Test
+    public void testSplice() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] fragment = profile(msgpack);
+
+        BufferPacker expected = msgpack.createBufferPacker();
+        expected.writeArrayBegin(3);
+        expected.write(1);
+        expected.write(msgpack.read(fragment));
+        expected.write(2);
+        expected.writeArrayEnd();
+
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(3);
+        pk.write(1);
+        pk.writeRawMessage(fragment);
+        pk.write(2);
+        pk.writeArrayEnd();
+        assertArrayEquals(expected.toByteArray(), pk.toByteArray());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(fragment.length);
+        direct.put(fragment).flip();
+        pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(3);
+        pk.write(1);
+        pk.writeRawMessage(direct);
+        pk.write(2);
+        pk.writeArrayEnd();
+        assertArrayEquals(expected.toByteArray(), pk.toByteArray());
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        RawMessage msg = new RawMessage(profile(msgpack));
+        List<RawMessage> list = new ArrayList<RawMessage>();
+        list.add(msg);
+        list.add(null);
+        list.add(new RawMessage(msgpack.write(7)));
+
+        byte[] b = msgpack.write(list);
+        List<RawMessage> read = msgpack.read(b, Templates.tList(Templates.TRawMessage));
+        assertEquals(3, read.size());
+        assertEquals(msg, read.get(0));
+        assertNull(read.get(1));
+        assertEquals(7, msgpack.read(read.get(2).toByteArray(), Integer.class).intValue());
+
+        BufferUnpacker u = msgpack.createBufferUnpacker(msg.toByteArray());
+        assertEquals(msg, u.read(RawMessage.class));
+    }
+
+    @Test
+    public void testJSON() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        JSON json = new JSON();
+        Value v = msgpack.read(msgpack.write(new int[] { 1, 2 }));
+        BufferPacker pk = json.createBufferPacker();
+        pk.writeRawMessage(msgpack.write(v));
+        assertEquals("[1,2]", new String(pk.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] fragment = profile(msgpack);
+
+        // every proper prefix is truncated
+        for (int len = 0; len < fragment.length; len += 7) {
+            try {
+                new RawMessage(fragment, 0, len);
+                fail("prefix of " + len);
+            } catch (MessageTypeException expected) {
+            }
+        }
+        byte[] twice = new byte[fragment.length * 2];
+        System.arraycopy(fragment, 0, twice, 0, fragment.length);
+        System.arraycopy(fragment, 0, twice, fragment.length, fragment.length);
+        try {
+            new RawMessage(twice);
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+        new RawMessage(twice, fragment.length, fragment.length);
+
+        try {
+            new RawMessage(new byte[] { (byte) 0xc1 });
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+        // array 32 declaring more elements than there are bytes
+        try {
+            new RawMessage(new byte[] { (byte) 0xdd, (byte) 0xff, (byte) 0xff,
+                    (byte) 0xff, (byte) 0xff, 1 });
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+    }
+
+    @Test
+    public void testValidateSpec2013() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        msgpack.setSpec2013Enabled(true);
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(5);
+        pk.write(new byte[10]);
+        pk.write(new String(new char[100]));
+        pk.writeExt((byte) 1, new byte[4]);
+        pk.writeExt((byte) 2, new byte[5]);
+        pk.write(1.5);
+        pk.writeArrayEnd();
+        byte[] b = pk.toByteArray();
+        assertEquals(b.length, new RawMessage(b).getLength());
+    }
+}
@@ -0,0 +1,139 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.type.ExtValue;
+import org.msgpack.type.Value;
+import org.msgpack.type.ValueFactory;
+import org.msgpack.type.ValueType;
+import org.msgpack.unpacker.BufferUnpacker;
+import org.msgpack.unpacker.Converter;
+import org.msgpack.unpacker.UnpackerIterator;
+
+public class TestSpec2013 {
+
+    private static byte[] bytes(int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    private static String string(int len) {
+        char[] c = new char[len];
+        Arrays.fill(c, 'a');
+        return new String(c);
+    }
+
+    @Test
+    public void testString() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        msgpack.setSpec2013Enabled(true);
+        int[] lengths = { 0, 31, 32, 255, 256, 65535, 65536 };
+        int[] heads = { 0xa0, 0xbf, 0xd9, 0xd9, 0xda, 0xda, 0xdb };
+        int[] headerSizes = { 1, 1, 2, 2, 3, 3, 5 };
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] b = msgpack.write(string(lengths[i]));
+            assertEquals(heads[i], b[0] & 0xff);
+            assertEquals(headerSizes[i] + lengths[i], b.length);
+            assertEquals(string(lengths[i]), msgpack.read(b, String.class));
+        }
+
+        // raw 16 without the 2013 mode
+        byte[] b = new MessagePack().write(string(32));
+        assertEquals(0xda, b[0] & 0xff);
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        msgpack.setSpec2013Enabled(true);
+        int[] lengths = { 0, 255, 256, 65535, 65536 };
+        int[] heads = { 0xc4, 0xc4, 0xc5, 0xc5, 0xc6 };
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] b = msgpack.write(bytes(lengths[i]));
+            assertEquals(heads[i], b[0] & 0xff);
+            assertArrayEquals(bytes(lengths[i]), msgpack.read(b, byte[].class));
+            BufferUnpacker u = msgpack.createBufferUnpacker(b);
+            assertEquals(ValueType.RAW, u.getNextType());
+            assertArrayEquals(bytes(lengths[i]), u.readValue().asRawValue().getByteArray());
+        }
+
+        assertEquals(0xa3, new MessagePack().write(bytes(3))[0] & 0xff);
+    }
+
+    @Test
+    public void testExt() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        int[] lengths = { 1, 2, 4, 8, 16, 0, 3, 255, 256, 65535, 65536 };
+        int[] heads = { 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xc7, 0xc7, 0xc7, 0xc8, 0xc8, 0xc9 };
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] data = bytes(lengths[i]);
+            BufferPacker pk = msgpack.createBufferPacker();
+            pk.writeArrayBegin(2);
+            pk.writeExt((byte) 5, data);
+            pk.write(true);
+            pk.writeArrayEnd();
+            byte[] b = pk.toByteArray();
+            assertEquals(heads[i], b[1] & 0xff);
+
+            BufferUnpacker u = msgpack.createBufferUnpacker(b);
+            u.readArrayBegin();
+            assertEquals(ValueType.EXT, u.getNextType());
+            ExtValue ext = u.readExt();
+            assertEquals(5, ext.getExtType());
+            assertArrayEquals(data, ext.getByteArray());
+            assertTrue(u.readBoolean());
+            u.readArrayEnd();
+
+            u = msgpack.createBufferUnpacker(b);
+            u.readArrayBegin();
+            u.skip();
+            assertTrue(u.readBoolean());
+
+            Value v = msgpack.read(b);
+            assertEquals(ValueFactory.createExtValue((byte) 5, data), v.asArrayValue().get(0));
+            Converter c = new Converter(msgpack, v);
+            c.readArrayBegin();
+            assertEquals(ext, c.readExt());
+
+            // Value.writeTo
+            assertArrayEquals(b, msgpack.write(v));
+        }
+    }
+
+    @Test
+    public void testExtEachByte() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        List<Value> vs = new ArrayList<Value>();
+        BufferPacker pk = msgpack.createBufferPacker();
+        int[] lengths = { 1, 16, 0, 3, 300, 70000 };
+        for (int len : lengths) {
+            Value v = ValueFactory.createExtValue((byte) -1, bytes(len));
+            vs.add(v);
+            pk.write(v);
+        }
+        byte[] raw = pk.toByteArray();
+
+        int n = 0;
+        BufferUnpacker u = msgpack.createBufferUnpacker();
+        UnpackerIterator it = u.iterator();
+        for (int i = 0; i < raw.length; i++) {
+            u.feed(raw, i, 1);
+            while (it.hasNext()) {
+                assertEquals(vs.get(n), it.next());
+                n++;
+            }
+        }
+        assertEquals(vs.size(), n);
+    }
+}
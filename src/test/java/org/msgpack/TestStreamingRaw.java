@@ -0,0 +1,196 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.BufferUnpacker;
+import org.msgpack.unpacker.Converter;
+import org.msgpack.unpacker.Unpacker;
+
+public class TestStreamingRaw {
+
+    // random, so that chunks aliasing the same array cannot look alike
+    private static byte[] bytes(int len) {
+        byte[] b = new byte[len];
+        new Random(len).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] tail(byte[] b, int off) {
+        byte[] tail = new byte[b.length - off];
+        System.arraycopy(b, off, tail, 0, tail.length);
+        return tail;
+    }
+
+    private static File tempFile(byte[] contents) throws Exception {
+        File file = File.createTempFile("msgpack-raw", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testWriteRawInputStream() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        int[] sizes = { 0, 1, 31, 32, 255, 256, 65535, 65536, 100000 };
+        for (int size : sizes) {
+            byte[] data = bytes(size);
+
+            BufferPacker expected = msgpack.createBufferPacker();
+            expected.write(data);
+            expected.write(1);
+
+            BufferPacker pk = msgpack.createBufferPacker();
+            pk.writeRaw(new ByteArrayInputStream(data), size);
+            pk.write(1);
+            assertArrayEquals(expected.toByteArray(), pk.toByteArray());
+
+            Unpacker u = msgpack.createUnpacker(new ByteArrayInputStream(pk.toByteArray()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, u.readRaw(out));
+            assertArrayEquals(data, out.toByteArray());
+            assertEquals(1, u.readInt());
+        }
+    }
+
+    @Test
+    public void testReusedBodyBuffer() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] data = bytes(5 * 8192 + 100);
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeRawBegin(data.length);
+        byte[] buffer = new byte[8192];
+        for (int off = 0; off < data.length; off += buffer.length) {
+            int n = Math.min(buffer.length, data.length - off);
+            System.arraycopy(data, off, buffer, 0, n);
+            pk.writeRawBody(buffer, 0, n);
+        }
+        pk.writeRawEnd();
+        assertArrayEquals(data, msgpack.createBufferUnpacker(pk.toByteArray()).readByteArray());
+    }
+
+    @Test
+    public void testStreamingInsideArray() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] data = bytes(20000);
+
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeArrayBegin(2);
+        pk.writeRawBegin(data.length);
+        for (int off = 0; off < data.length; off += 3000) {
+            pk.writeRawBody(data, off, Math.min(3000, data.length - off));
+        }
+        pk.writeRawEnd();
+        pk.write("tail");
+        pk.writeArrayEnd();
+
+        BufferUnpacker u = msgpack.createBufferUnpacker(pk.toByteArray());
+        assertEquals(2, u.readArrayBegin());
+        byte[] buffer = new byte[1000];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int remain = u.readRawBegin();
+        assertEquals(data.length, remain);
+        while (remain > 0) {
+            int n = u.readRawBody(buffer, 0, buffer.length);
+            out.write(buffer, 0, n);
+            remain -= n;
+        }
+        u.readRawEnd();
+        assertEquals("tail", u.readString());
+        u.readArrayEnd();
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testWriteRawFileChannel() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] data = bytes(50000);
+        File file = tempFile(data);
+
+        BufferPacker expected = msgpack.createBufferPacker();
+        expected.write(new byte[] { 1, 2 });
+        expected.write(tail(data, 100));
+
+        FileChannel ch = new FileInputStream(file).getChannel();
+        try {
+            // through the generic copying path
+            BufferPacker pk = msgpack.createBufferPacker();
+            pk.write(new byte[] { 1, 2 });
+            pk.writeRaw(ch, 100, data.length - 100);
+            assertArrayEquals(expected.toByteArray(), pk.toByteArray());
+
+            // through FileChannel.transferTo
+            ByteArrayOutputStream bo = new ByteArrayOutputStream();
+            Packer cpk = msgpack.createPacker(Channels.newChannel(bo));
+            cpk.write(new byte[] { 1, 2 });
+            cpk.writeRaw(ch, 100, data.length - 100);
+            cpk.flush();
+            assertArrayEquals(expected.toByteArray(), bo.toByteArray());
+        } finally {
+            ch.close();
+        }
+    }
+
+    @Test
+    public void testReadRawChannel() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] data = bytes(30000);
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.write(data);
+
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        BufferUnpacker u = msgpack.createBufferUnpacker(pk.toByteArray());
+        assertEquals(data.length, u.readRaw(Channels.newChannel(bo)));
+        assertArrayEquals(data, bo.toByteArray());
+    }
+
+    @Test
+    public void testConverterReadRaw() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        byte[] data = bytes(1000);
+        Converter conv = new Converter(msgpack,
+                msgpack.createBufferUnpacker(msgpack.write(data)).readValue());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, conv.readRaw(out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testIncompleteBody() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeRawBegin(10);
+        pk.writeRawBody(new byte[5], 0, 5);
+        try {
+            pk.writeRawEnd();
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+
+        pk = msgpack.createBufferPacker();
+        pk.writeRawBegin(2);
+        try {
+            pk.writeRawBody(new byte[5], 0, 5);
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+    }
+}
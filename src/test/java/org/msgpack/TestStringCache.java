@@ -0,0 +1,99 @@
+package org.msgpack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.StringCache;
+import org.msgpack.template.Templates;
+
+public class TestStringCache {
+
+    private static String string(int len, char c) {
+        char[] chars = new char[len];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static final String[] SAMPLES = { "", "id", "status", "日本語",
+            string(31, 'a'), string(32, 'b'), string(100, 'é'), string(255, 'c') };
+
+    @Test
+    public void testSameBytes() throws Exception {
+        for (boolean spec2013 : new boolean[] { false, true }) {
+            MessagePack plain = new MessagePack();
+            plain.setSpec2013Enabled(spec2013);
+            MessagePack cached = new MessagePack();
+            cached.setSpec2013Enabled(spec2013);
+            cached.setStringCache(new StringCache(100, 300));
+
+            for (int round = 0; round < 2; round++) {
+                for (String s : SAMPLES) {
+                    BufferPacker expected = plain.createBufferPacker();
+                    expected.write(s);
+                    BufferPacker actual = cached.createBufferPacker();
+                    actual.write(s);
+                    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+                }
+            }
+            StringCache cache = cached.getStringCache();
+            assertEquals(SAMPLES.length, cache.getSize());
+            assertEquals(SAMPLES.length, cache.getHitCount());
+            assertEquals(SAMPLES.length, cache.getMissCount());
+            assertEquals(0.5, cache.getHitRate(), 0.0);
+        }
+    }
+
+    @Test
+    public void testSharedBetweenFormats() throws Exception {
+        StringCache cache = new StringCache();
+        String s = string(40, 'x');
+        MessagePack legacy = new MessagePack();
+        legacy.setStringCache(cache);
+        MessagePack spec2013 = new MessagePack();
+        spec2013.setSpec2013Enabled(true);
+        spec2013.setStringCache(cache);
+
+        byte[] b1 = legacy.write(s);
+        byte[] b2 = spec2013.write(s);
+        assertEquals((byte) 0xda, b1[0]);
+        assertEquals((byte) 0xd9, b2[0]);
+        assertArrayEquals(b1, legacy.write(s));
+        assertArrayEquals(b2, spec2013.write(s));
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        StringCache cache = new StringCache(2, 5);
+        MessagePack msgpack = new MessagePack();
+        msgpack.setStringCache(cache);
+
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+        map.put("toolong", 4);
+        for (int i = 0; i < 3; i++) {
+            byte[] b = msgpack.write(map);
+            assertEquals(map, msgpack.read(b, Templates.tMap(Templates.TString, Templates.TInteger)));
+        }
+        assertEquals(2, cache.getSize());
+        // two of a, b and c are hits after the first round; "toolong" is
+        // never looked up
+        assertEquals(4, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+        // accepts new strings again after being full
+        msgpack.write("d");
+        assertEquals(1, cache.getSize());
+    }
+}
@@ -0,0 +1,69 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+
+public class TestArrayInput {
+    @Test
+    public void testGetPrimitives() throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream o = new DataOutputStream(bo);
+        o.writeByte(0);
+        long[] longs = { 0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789abcdefL, 0xfedcba9876543210L };
+        for (long l : longs) {
+            o.writeByte((byte) l);
+            o.writeShort((short) l);
+            o.writeInt((int) l);
+            o.writeLong(l);
+            o.writeInt((int) l); // raw float bits
+            o.writeLong(l); // raw double bits
+        }
+        byte[] src = bo.toByteArray();
+
+        ArrayInput in = new ArrayInput(src, 1, src.length - 1);
+        for (long l : longs) {
+            assertEquals((byte) l, in.getByte());
+            in.advance();
+            assertEquals((short) l, in.getShort());
+            in.advance();
+            assertEquals((int) l, in.getInt());
+            in.advance();
+            assertEquals(l, in.getLong());
+            in.advance();
+            assertEquals((int) l, Float.floatToRawIntBits(in.getFloat()));
+            in.advance();
+            assertEquals(l, Double.doubleToRawLongBits(in.getDouble()));
+            in.advance();
+        }
+        assertEquals(src.length - 1, in.getReadByteCount());
+        assertEquals(0, in.getSize());
+    }
+
+    @Test
+    public void testIncomplete() throws IOException {
+        byte[] src = { 1, 2, 3 };
+        ArrayInput in = new ArrayInput(src, 0, src.length);
+        try {
+            in.getInt();
+            fail();
+        } catch (EndOfBufferException e) {
+        }
+        assertEquals(3, in.getSize());
+
+        byte[] b = new byte[5];
+        assertEquals(3, in.read(b, 0, 5));
+        assertEquals(3, b[2]);
+        try {
+            in.readByte();
+            fail();
+        } catch (EndOfBufferException e) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.unpacker.Unpacker;
+
+
+public class TestBufferedStreamInput {
+    // returns at most one byte per read, like a slow socket
+    private static InputStream trickle(byte[] b) {
+        return new ByteArrayInputStream(b) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    public void testReadPrimitives() throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream o = new DataOutputStream(bo);
+        for (int i = 0; i < 10; i++) {
+            o.writeByte(1);
+            o.writeShort(2);
+            o.writeInt(3);
+            o.writeLong(4L);
+            o.writeFloat(1.1f);
+            o.writeDouble(1.2);
+        }
+        byte[] src = bo.toByteArray();
+
+        InputStream[] streams = { new ByteArrayInputStream(src), trickle(src) };
+        for (InputStream s : streams) {
+            BufferedStreamInput in = new BufferedStreamInput(s, 16);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(1, in.getByte());
+                in.advance();
+                assertEquals(2, in.getShort());
+                in.advance();
+                assertEquals(3, in.getInt());
+                in.advance();
+                assertEquals(4L, in.getLong());
+                in.advance();
+                assertEquals(1.1f, in.getFloat(), 0.0f);
+                in.advance();
+                assertEquals(1.2, in.getDouble(), 0.0);
+                in.advance();
+            }
+            assertEquals(src.length, in.getReadByteCount());
+            try {
+                in.readByte();
+                fail();
+            } catch (EOFException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testReadAndRefer() throws IOException {
+        byte[] src = new byte[100];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) i;
+        }
+        BufferedStreamInput in = new BufferedStreamInput(trickle(src), 16);
+        assertEquals(0, in.readByte());
+
+        final byte[] referred = new byte[16];
+        assertTrue(in.tryRefer(new BufferReferer() {
+            public void refer(ByteBuffer bb, boolean gift) {
+                assertEquals(false, gift);
+                bb.get(referred);
+            }
+        }, 16));
+        for (int i = 0; i < referred.length; i++) {
+            assertEquals(src[1 + i], referred[i]);
+        }
+        assertEquals(false, in.tryRefer(null, 17));
+
+        byte[] b = new byte[40];
+        in.read(b, 0, 10);
+        in.read(b, 10, 30);
+        for (int i = 0; i < b.length; i++) {
+            assertEquals(src[17 + i], b[i]);
+        }
+        assertEquals(57, in.getReadByteCount());
+    }
+
+    @Test
+    public void testUnpack() throws IOException {
+        MessagePack msgpack = new MessagePack();
+        BufferPacker pk = msgpack.createBufferPacker();
+        for (int i = 0; i < 100; i++) {
+            pk.write(i * 1000L);
+            pk.write("value" + i);
+            pk.write(new byte[i]);
+        }
+        byte[] src = pk.toByteArray();
+
+        Unpacker u = msgpack.createUnpacker(trickle(src), 32);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 1000L, u.readLong());
+            assertEquals("value" + i, u.readString());
+            assertArrayEquals(new byte[i], u.readByteArray());
+        }
+        try {
+            u.readInt();
+            fail();
+        } catch (EOFException e) {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.MessagePackUnpacker;
+import org.msgpack.unpacker.Unpacker;
+
+
+public class TestChannelInputOutput {
+    // gives at most one byte per read, and nothing on every other read
+    // like a non-blocking socket
+    private static class TrickleChannel implements ReadableByteChannel {
+        private final ByteBuffer src;
+        private boolean starve;
+
+        TrickleChannel(byte[] b) {
+            src = ByteBuffer.wrap(b);
+        }
+
+        public int read(ByteBuffer dst) {
+            if (!src.hasRemaining()) {
+                return -1;
+            }
+            starve = !starve;
+            if (starve) {
+                return 0;
+            }
+            dst.put(src.get());
+            return 1;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static byte[] pack(MessagePack msgpack) throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        Packer pk = msgpack.createPacker(Channels.newChannel(bo));
+        for (int i = 0; i < 100; i++) {
+            pk.write(i * 1000L);
+            pk.write("value" + i);
+            pk.write(new byte[i * 3]);
+            pk.write(1.5 * i);
+        }
+        pk.close();
+        return bo.toByteArray();
+    }
+
+    @Test
+    public void testPackUnpack() throws IOException {
+        MessagePack msgpack = new MessagePack();
+        byte[] b = pack(msgpack);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Packer spk = msgpack.createPacker(expected);
+        for (int i = 0; i < 100; i++) {
+            spk.write(i * 1000L);
+            spk.write("value" + i);
+            spk.write(new byte[i * 3]);
+            spk.write(1.5 * i);
+        }
+        assertArrayEquals(expected.toByteArray(), b);
+
+        Unpacker u = msgpack.createUnpacker(
+                Channels.newChannel(new ByteArrayInputStream(b)));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 1000L, u.readLong());
+            assertEquals("value" + i, u.readString());
+            assertArrayEquals(new byte[i * 3], u.readByteArray());
+            assertEquals(1.5 * i, u.readDouble(), 0.0);
+        }
+        try {
+            u.readInt();
+            fail();
+        } catch (EOFException e) {
+        }
+    }
+
+    @Test
+    public void testNonBlockingResume() throws IOException {
+        MessagePack msgpack = new MessagePack();
+        byte[] b = pack(msgpack);
+
+        // small buffer so that some raw bodies bypass it
+        ChannelInput in = new ChannelInput(new TrickleChannel(b), 16);
+        Unpacker u = new MessagePackUnpacker(msgpack, in) {
+        };
+        int retries = 0;
+        for (int i = 0; i < 100; i++) {
+            while (true) {
+                try {
+                    assertEquals(i * 1000L, u.readLong());
+                    break;
+                } catch (EndOfBufferException e) {
+                    retries++;
+                }
+            }
+            while (true) {
+                try {
+                    assertEquals("value" + i, u.readString());
+                    break;
+                } catch (EndOfBufferException e) {
+                    retries++;
+                }
+            }
+            while (true) {
+                try {
+                    assertArrayEquals(new byte[i * 3], u.readByteArray());
+                    break;
+                } catch (EndOfBufferException e) {
+                    retries++;
+                }
+            }
+            while (true) {
+                try {
+                    assertEquals(1.5 * i, u.readDouble(), 0.0);
+                    break;
+                } catch (EndOfBufferException e) {
+                    retries++;
+                }
+            }
+        }
+        assertEquals(true, retries > 0);
+        assertEquals(b.length, u.getReadByteCount());
+    }
+
+    @Test
+    public void testNonBlockingOutputRejected() throws IOException {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            new MessagePack().createPacker(pipe.sink());
+            fail();
+        } catch (IllegalBlockingModeException expected) {
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+}
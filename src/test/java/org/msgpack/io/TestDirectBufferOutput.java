@@ -0,0 +1,129 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+
+
+public class TestDirectBufferOutput {
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream o1 = new DataOutputStream(bo);
+        DirectBufferOutput o2 = new DirectBufferOutput(new DirectBufferPool(16));
+        byte[] raw = new byte[40];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) i;
+        }
+        for (int i = 0; i < 5; i++) {
+            o1.writeByte(9);
+            o1.writeLong(i);
+            o2.writeByteAndLong((byte) 9, i);
+            o1.writeDouble(1.5);
+            o2.writeDouble(1.5);
+            o1.write(raw, 0, raw.length);
+            o2.write(raw, 0, raw.length);
+            o1.write(raw, 3, 7);
+            o2.write(ByteBuffer.wrap(raw, 3, 7));
+        }
+        byte[] expected = bo.toByteArray();
+        assertEquals(expected.length, o2.getSize());
+        assertArrayEquals(expected, o2.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        o2.writeTo(out);
+        assertArrayEquals(expected, out.toByteArray());
+
+        for (ByteBuffer bb : o2.toByteBuffers()) {
+            assertTrue(bb.isDirect());
+            assertTrue(bb.isReadOnly());
+        }
+    }
+
+    @Test
+    public void testRecycle() throws IOException {
+        DirectBufferPool pool = new DirectBufferPool(16);
+        DirectBufferOutput o = new DirectBufferOutput(pool);
+        o.write(new byte[40], 0, 40);
+        assertEquals(3, o.toByteBuffers().length);
+        o.clear();
+        assertEquals(0, o.getSize());
+        assertEquals(2, pool.getPooledCount());
+        o.writeInt(1);
+        assertEquals(4, o.getSize());
+        o.close();
+        assertEquals(3, pool.getPooledCount());
+    }
+
+    @Test
+    public void testWriteToChannel() throws IOException {
+        DirectBufferOutput o = new DirectBufferOutput(new DirectBufferPool(16));
+        byte[] expected = new byte[40];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        o.write(expected, 0, expected.length);
+        File file = File.createTempFile("msgpack-direct", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            assertEquals(expected.length, o.writeTo(out.getChannel()));
+        } finally {
+            out.close();
+        }
+        byte[] actual = new byte[expected.length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(actual);
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(expected, actual);
+
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            o.writeTo(pipe.sink());
+            fail();
+        } catch (IllegalBlockingModeException e) {
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        o.close();
+    }
+
+    @Test
+    public void testPacker() throws IOException {
+        MessagePack msgpack = new MessagePack();
+        BufferPacker expected = msgpack.createBufferPacker();
+        BufferPacker pk = msgpack.createDirectBufferPacker(new DirectBufferPool(64));
+        for (int i = 0; i < 100; i++) {
+            expected.write("value" + i);
+            pk.write("value" + i);
+            expected.write(i * 1000);
+            pk.write(i * 1000);
+        }
+        assertArrayEquals(expected.toByteArray(), pk.toByteArray());
+        assertEquals(expected.getBufferSize(), pk.getBufferSize());
+        pk.clear();
+        assertEquals(0, pk.getBufferSize());
+        pk.close();
+    }
+}
@@ -748,5 +748,82 @@ public class TestLinkedBufferInput {
         } catch(EndOfBufferException eof) {
         }
     }
-}
 
+    @Test
+    public void testReuseConsumedChunks() throws IOException {
+        LinkedBufferInput b = new LinkedBufferInput(8);
+        byte[] data = new byte[8];
+        b.feed(data);
+        b.feed(data);
+        b.feed(data);
+        assertEquals(3, b.link.size());
+        ByteBuffer first = b.link.peekFirst();
+
+        byte[] buf = new byte[8];
+        assertEquals(8, b.read(buf, 0, 8));
+        assertEquals(2, b.link.size());
+
+        // the consumed chunk is reused for the next allocation
+        b.feed(data);
+        assertEquals(3, b.link.size());
+        assertEquals(true, first == b.link.peekLast());
+        assertEquals(24, b.getSize());
+
+        for(int i=0; i < 24; i++) {
+            assertEquals(0, b.readByte());
+        }
+        assertEquals(0, b.getSize());
+    }
+
+    @Test
+    public void testManyChunks() throws IOException {
+        LinkedBufferInput b = new LinkedBufferInput(8);
+        for(int i=0; i < 100; i++) {
+            b.feed(new byte[] { (byte)i }, true);
+        }
+        assertEquals(100, b.link.size());
+        assertEquals(100, b.getSize());
+        assertEquals(0x00010203, b.getInt());
+        b.advance();
+        for(int i=4; i < 100; i++) {
+            assertEquals((byte)i, b.readByte());
+        }
+        assertEndOfBuffer(b);
+    }
+
+    @Test
+    public void testWaterMarks() throws IOException {
+        final int[] events = new int[2];
+        LinkedBufferInput b = new LinkedBufferInput(8);
+        b.setWaterMarks(20, 5, new WaterMarkListener() {
+            public void onHighWaterMark(LinkedBufferInput input) {
+                events[0]++;
+            }
+            public void onLowWaterMark(LinkedBufferInput input) {
+                events[1]++;
+            }
+        });
+
+        byte[] data = new byte[10];
+        b.feed(data);
+        assertEquals(0, events[0]);
+        b.feed(data);
+        assertEquals(1, events[0]);
+        b.feed(data);
+        assertEquals(1, events[0]);
+
+        byte[] buf = new byte[20];
+        b.read(buf, 0, 20);
+        assertEquals(0, events[1]);
+        for(int i=0; i < 5; i++) {
+            b.readByte();
+        }
+        assertEquals(1, events[1]);
+
+        b.feed(data);
+        b.feed(data);
+        assertEquals(2, events[0]);
+        b.clear();
+        assertEquals(2, events[1]);
+    }
+}
@@ -2,10 +2,16 @@ package org.msgpack.io;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.DataOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
 
 import org.junit.Test;
 
@@ -89,5 +95,168 @@ public class TestLinkedBufferOutput {
         assertEquals(b1.length, b2.length);
         assertArrayEquals(b1, b2);
     }
-}
 
+    @Test
+    public void testRecycleChunks() throws IOException {
+        BufferPool pool = new BufferPool(10);
+        LinkedBufferOutput o = new LinkedBufferOutput(10, pool);
+        byte[] large = new byte[20];
+        for(int i=0; i < 25; i++) {
+            o.writeByte((byte)i);
+        }
+        o.write(large, 0, large.length);
+        assertEquals(45, o.getSize());
+        assertEquals(0, pool.getPooledCount());
+
+        // the linked caller array is not pooled
+        o.clear();
+        assertEquals(0, o.getSize());
+        assertEquals(3, pool.getPooledCount());
+
+        o.writeInt(1);
+        assertEquals(2, pool.getPooledCount());
+        o.close();
+        assertEquals(3, pool.getPooledCount());
+
+        for(int i=0; i < 25; i++) {
+            o.writeByte((byte)i);
+        }
+        assertEquals(0, pool.getPooledCount());
+        byte[] b = o.toByteArray();
+        assertEquals(25, b.length);
+        for(int i=0; i < 25; i++) {
+            assertEquals((byte)i, b[i]);
+        }
+    }
+
+    @Test
+    public void testPoolIgnoresOtherSizes() {
+        BufferPool pool = new BufferPool(10, 2);
+        pool.release(new byte[11]);
+        assertEquals(0, pool.getPooledCount());
+        pool.release(new byte[10]);
+        pool.release(new byte[10]);
+        pool.release(new byte[10]);
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(12, pool.allocate(12).length);
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(10, pool.allocate(10).length);
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    private static LinkedBufferOutput createFilledOutput(ByteArrayOutputStream expected) throws IOException {
+        LinkedBufferOutput o = new LinkedBufferOutput(10);
+        byte[] large = new byte[30];
+        for(int i=0; i < large.length; i++) {
+            large[i] = (byte)(100 + i);
+        }
+        for(int i=0; i < 25; i++) {
+            o.writeByte((byte)i);
+            expected.write(i);
+        }
+        o.write(large, 0, large.length);
+        expected.write(large);
+        o.writeInt(7);
+        new DataOutputStream(expected).writeInt(7);
+        return o;
+    }
+
+    @Test
+    public void testToByteBuffers() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        LinkedBufferOutput o = createFilledOutput(expected);
+        ByteBuffer[] buffers = o.toByteBuffers();
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        for(ByteBuffer bb : buffers) {
+            assertTrue(bb.isReadOnly());
+            byte[] b = new byte[bb.remaining()];
+            bb.get(b);
+            bo.write(b);
+        }
+        assertArrayEquals(expected.toByteArray(), bo.toByteArray());
+        assertArrayEquals(expected.toByteArray(), o.toByteArray());
+    }
+
+    @Test
+    public void testWriteToStream() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        LinkedBufferOutput o = createFilledOutput(expected);
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        o.writeTo(bo);
+        assertArrayEquals(expected.toByteArray(), bo.toByteArray());
+    }
+
+    @Test
+    public void testWriteToChannel() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        LinkedBufferOutput o = createFilledOutput(expected);
+        // accepts at most 7 bytes per call
+        final ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        GatheringByteChannel channel = new GatheringByteChannel() {
+            public long write(ByteBuffer[] srcs, int offset, int length) {
+                int n = 0;
+                for(int i=offset; i < offset + length && n < 7; i++) {
+                    while(srcs[i].hasRemaining() && n < 7) {
+                        bo.write(srcs[i].get());
+                        n++;
+                    }
+                }
+                return n;
+            }
+            public long write(ByteBuffer[] srcs) {
+                return write(srcs, 0, srcs.length);
+            }
+            public int write(ByteBuffer src) {
+                return (int) write(new ByteBuffer[] { src });
+            }
+            public boolean isOpen() {
+                return true;
+            }
+            public void close() {
+            }
+        };
+        assertEquals(expected.size(), o.writeTo(channel));
+        assertArrayEquals(expected.toByteArray(), bo.toByteArray());
+    }
+
+    @Test
+    public void testWriteToNonBlockingChannel() throws IOException {
+        LinkedBufferOutput o = createFilledOutput(new ByteArrayOutputStream());
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            o.writeTo(pipe.sink());
+            fail();
+        } catch (IllegalBlockingModeException expected) {
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    public void testOverwriteAndRemove() throws IOException {
+        LinkedBufferOutput o = new LinkedBufferOutput(10);
+        byte[] expected = new byte[25];
+        for (int i = 0; i < 25; i++) {
+            o.writeByte((byte) i);
+            expected[i] = (byte) i;
+        }
+        // spans the first two chunks
+        o.overwrite(8, new byte[] { 100, 101, 102, 103 }, 0, 4);
+        expected[8] = 100;
+        expected[9] = 101;
+        expected[10] = 102;
+        expected[11] = 103;
+        assertArrayEquals(expected, o.toByteArray());
+
+        // only bytes in the current chunk can be removed
+        assertTrue(!o.remove(18, 3));
+        assertTrue(o.remove(21, 2));
+        byte[] removed = new byte[23];
+        System.arraycopy(expected, 0, removed, 0, 21);
+        System.arraycopy(expected, 23, removed, 21, 2);
+        assertArrayEquals(removed, o.toByteArray());
+        assertEquals(23, o.getSize());
+    }
+}
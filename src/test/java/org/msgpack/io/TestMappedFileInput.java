@@ -0,0 +1,144 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.MessagePackUnpacker;
+import org.msgpack.unpacker.Unpacker;
+
+
+public class TestMappedFileInput {
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile("msgpack", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testReadPrimitives() throws IOException {
+        File file = createTempFile();
+        DataOutputStream o = new DataOutputStream(new FileOutputStream(file));
+        o.writeByte(1);
+        o.writeShort(2);
+        o.writeInt(3);
+        o.writeLong(4L);
+        o.writeFloat(1.1f);
+        o.writeDouble(1.2);
+        o.close();
+
+        // a window of 8 bytes forces remapping between values
+        MappedFileInput in = new MappedFileInput(
+                new RandomAccessFile(file, "r").getChannel(), 8);
+        assertEquals(1, in.getByte());
+        in.advance();
+        assertEquals(2, in.getShort());
+        in.advance();
+        assertEquals(3, in.getInt());
+        in.advance();
+        assertEquals(4L, in.getLong());
+        in.advance();
+        assertEquals(1.1f, in.getFloat(), 0.0f);
+        in.advance();
+        assertEquals(1.2, in.getDouble(), 0.0);
+        in.advance();
+        assertEquals(27, in.getReadByteCount());
+        assertEquals(27, in.getPosition());
+        try {
+            in.readByte();
+            fail();
+        } catch (EOFException e) {
+        }
+        in.close();
+    }
+
+    @Test
+    public void testReadAndRefer() throws IOException {
+        File file = createTempFile();
+        byte[] src = new byte[100];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) i;
+        }
+        FileOutputStream o = new FileOutputStream(file);
+        o.write(src);
+        o.close();
+
+        MappedFileInput in = new MappedFileInput(
+                new RandomAccessFile(file, "r").getChannel(), 16);
+        byte[] b = new byte[40];
+        assertEquals(40, in.read(b, 0, 40));
+        for (int i = 0; i < 40; i++) {
+            assertEquals(src[i], b[i]);
+        }
+
+        final byte[] referred = new byte[10];
+        assertTrue(in.tryRefer(new BufferReferer() {
+            public void refer(ByteBuffer bb, boolean gift) {
+                assertEquals(10, bb.remaining());
+                bb.get(referred);
+            }
+        }, 10));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(src[40 + i], referred[i]);
+        }
+
+        // larger than the window: the caller has to copy
+        assertEquals(false, in.tryRefer(new BufferReferer() {
+            public void refer(ByteBuffer bb, boolean gift) {
+                fail();
+            }
+        }, 17));
+        assertEquals(50, in.getPosition());
+        assertEquals(src[50], in.readByte());
+        in.close();
+    }
+
+    @Test
+    public void testUnpackFile() throws IOException {
+        MessagePack msgpack = new MessagePack();
+        File file = createTempFile();
+        FileOutputStream o = new FileOutputStream(file);
+        Packer pk = msgpack.createPacker(o);
+        for (int i = 0; i < 100; i++) {
+            pk.write(i * 1000L);
+            pk.write("value" + i);
+            pk.write(new byte[i]);
+        }
+        o.close();
+
+        Unpacker u = msgpack.createUnpacker(file);
+        checkUnpack(u);
+        u.close();
+
+        u = new MessagePackUnpacker(msgpack, new MappedFileInput(
+                new RandomAccessFile(file, "r").getChannel(), 37)) {
+        };
+        checkUnpack(u);
+        u.close();
+    }
+
+    private static void checkUnpack(Unpacker u) throws IOException {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 1000L, u.readLong());
+            assertEquals("value" + i, u.readString());
+            assertArrayEquals(new byte[i], u.readByteArray());
+        }
+        try {
+            u.readInt();
+            fail();
+        } catch (EOFException e) {
+        }
+    }
+}
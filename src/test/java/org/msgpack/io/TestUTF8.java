@@ -0,0 +1,111 @@
+package org.msgpack.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
+
+public class TestUTF8 {
+
+    private static List<String> samples() {
+        List<String> list = new ArrayList<String>();
+        list.add("");
+        list.add("a");
+        list.add("hello, world");
+        list.add("été");
+        list.add("日本語");
+        list.add("😀 smile 😀");
+        list.add("lone \ud800 high");
+        list.add("lone \udc00 low");
+        list.add("trailing \ud800");
+        list.add("\u007f\u0080߿ࠀ￿");
+
+        Random rand = new Random(0);
+        char[] alphabet = { 'a', 'Z', '0', 'é', 'ࠀ', '日',
+                '\ud83d', '\ude00', '\ud800' };
+        for (int len : new int[] { 10, 100, 1000, 10000, 40000 }) {
+            StringBuilder ascii = new StringBuilder();
+            StringBuilder mixed = new StringBuilder();
+            for (int i = 0; i < len; i++) {
+                ascii.append((char) ('a' + rand.nextInt(26)));
+                mixed.append(alphabet[rand.nextInt(alphabet.length)]);
+            }
+            list.add(ascii.toString());
+            list.add(mixed.toString());
+        }
+        return list;
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        for (String s : samples()) {
+            byte[] expected = s.getBytes("UTF-8");
+            assertEquals(expected.length, UTF8.encodedLength(s));
+            byte[] actual = new byte[s.length() * 3];
+            int n = UTF8.encode(s, 0, s.length(), actual, 0);
+            assertEquals(expected.length, n);
+            byte[] trimmed = new byte[n];
+            System.arraycopy(actual, 0, trimmed, 0, n);
+            assertArrayEquals(expected, trimmed);
+        }
+    }
+
+    @Test
+    public void testWriteUTF8Chunked() throws Exception {
+        for (String s : samples()) {
+            // small buffers split the string at many points
+            for (int bufferSize : new int[] { 9, 10, 11, 64 }) {
+                LinkedBufferOutput o = new LinkedBufferOutput(bufferSize);
+                o.writeByte((byte) 1);
+                o.writeUTF8(s);
+                o.writeByte((byte) 2);
+
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                expected.write(1);
+                expected.write(s.getBytes("UTF-8"));
+                expected.write(2);
+                assertArrayEquals(expected.toByteArray(), o.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testPackString() throws Exception {
+        for (boolean spec2013 : new boolean[] { false, true }) {
+            MessagePack msgpack = new MessagePack();
+            msgpack.setSpec2013Enabled(spec2013);
+            for (String s : samples()) {
+                BufferPacker expected = msgpack.createBufferPacker();
+                expected.write(s.getBytes("UTF-8"));
+                byte[] body = expected.toByteArray();
+                if (spec2013) {
+                    // str and bin differ only in the header
+                    BufferPacker header = msgpack.createBufferPacker();
+                    header.write(s);
+                    byte[] actual = header.toByteArray();
+                    byte[] utf8 = s.getBytes("UTF-8");
+                    assertEquals(new String(utf8, "UTF-8"), msgpack.read(actual, String.class));
+                    continue;
+                }
+
+                BufferPacker pk = msgpack.createBufferPacker();
+                pk.write(s);
+                assertArrayEquals(body, pk.toByteArray());
+
+                ByteArrayOutputStream bo = new ByteArrayOutputStream();
+                Packer spk = msgpack.createPacker(bo);
+                spk.write(s);
+                spk.flush();
+                assertArrayEquals(body, bo.toByteArray());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.msgpack.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.BufferUnpacker;
+import org.msgpack.unpacker.Unpacker;
+
+
+public class TestAnyTemplate {
+
+    @Test
+    public void testInlineCache() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        TemplateRegistry registry = new TemplateRegistry(null);
+        AnyTemplate<Object> tmpl = new AnyTemplate<Object>(registry);
+        tmpl.setStatisticsEnabled(true);
+        List<Object> values = Arrays.<Object> asList(1, "a", 2, "b", 3L);
+        BufferPacker packer = msgpack.createBufferPacker();
+        for (Object v : values) {
+            tmpl.write(packer, v);
+        }
+        assertEquals(3, tmpl.getMissCount());
+        assertEquals(2, tmpl.getHitCount());
+        assertEquals(3, tmpl.getCachedTypeCount());
+
+        BufferUnpacker unpacker = msgpack.createBufferUnpacker(packer.toByteArray());
+        assertEquals(1, unpacker.readInt());
+        assertEquals("a", unpacker.readString());
+        assertEquals(2, unpacker.readInt());
+        assertEquals("b", unpacker.readString());
+        assertEquals(3L, unpacker.readLong());
+    }
+
+    @Test
+    public void testStatisticsDisabledByDefault() throws Exception {
+        AnyTemplate<Object> tmpl = new AnyTemplate<Object>(new TemplateRegistry(null));
+        assertFalse(tmpl.isStatisticsEnabled());
+        BufferPacker packer = new MessagePack().createBufferPacker();
+        tmpl.write(packer, 1);
+        tmpl.write(packer, 2);
+        assertEquals(0, tmpl.getHitCount());
+        assertEquals(0, tmpl.getMissCount());
+        assertEquals(1, tmpl.getCachedTypeCount());
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        TemplateRegistry registry = new TemplateRegistry(null);
+        AnyTemplate<Object> tmpl = new AnyTemplate<Object>(registry);
+        tmpl.setStatisticsEnabled(true);
+        Object[] values = new Object[] {
+                true, (byte) 1, (short) 1, 1, 1L, 1.0f, 1.0, 'c', "s",
+                BigInteger.ONE, new byte[0], new int[0]
+        };
+        BufferPacker packer = new MessagePack().createBufferPacker();
+        for (Object v : values) {
+            tmpl.write(packer, v);
+        }
+        assertEquals(1 + AnyTemplate.POLYMORPHIC_CACHE_SIZE, tmpl.getCachedTypeCount());
+        assertEquals(values.length, tmpl.getMissCount());
+    }
+
+    @Test
+    public void testRegisterInvalidatesCache() throws Exception {
+        TemplateRegistry registry = new TemplateRegistry(null);
+        AnyTemplate<Object> tmpl = new AnyTemplate<Object>(registry);
+        tmpl.setStatisticsEnabled(true);
+        BufferPacker packer = new MessagePack().createBufferPacker();
+        tmpl.write(packer, "foo");
+        registry.register(String.class, new AbstractTemplate<String>() {
+            public void write(Packer pk, String v, boolean required) throws IOException {
+                pk.write(v.length());
+            }
+
+            public String read(Unpacker u, String to, boolean required) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        tmpl.write(packer, "foo");
+        assertEquals(2, tmpl.getMissCount());
+
+        BufferUnpacker unpacker = new MessagePack().createBufferUnpacker(packer.toByteArray());
+        assertEquals("foo", unpacker.readString());
+        assertEquals(3, unpacker.readInt());
+    }
+}
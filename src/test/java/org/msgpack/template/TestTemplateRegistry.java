@@ -3,11 +3,29 @@ package org.msgpack.template;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.testclasses.ListTypeFieldsClass;
+import org.msgpack.testclasses.MapTypeFieldsClass;
+import org.msgpack.testclasses.ModifiersFieldsClass;
+import org.msgpack.testclasses.PrimitiveTypeFieldsClass;
+import org.msgpack.testclasses.ReferenceCycleTypeFieldsClass;
+import org.msgpack.testclasses.ReferenceTypeFieldsClass;
+import org.msgpack.unpacker.BufferUnpacker;
 
 public class TestTemplateRegistry {
 
@@ -35,4 +53,171 @@ public class TestTemplateRegistry {
         assertThat(template, is(instanceOf(ListTemplate.class)));
     }
 
+    static class GenericFields {
+        public List<String> f0;
+        public List<String> f1;
+        public Map<String, Integer> f2;
+    }
+
+    @Test
+    public void testParameterizedTypeTemplateIsCached() throws Exception {
+        TemplateRegistry registry = new TemplateRegistry(null);
+        Type f0 = GenericFields.class.getField("f0").getGenericType();
+        Type f1 = GenericFields.class.getField("f1").getGenericType();
+        Type f2 = GenericFields.class.getField("f2").getGenericType();
+        Template<?> list = registry.lookup(f0);
+        assertThat(list, is(instanceOf(ListTemplate.class)));
+        assertSame(list, registry.lookup(f0));
+        assertSame(list, registry.lookup(f1));
+        assertThat(registry.lookup(f2), is(instanceOf(MapTemplate.class)));
+        assertNotSame(list, registry.lookup(f2));
+
+        registry.register(String.class, StringTemplate.getInstance());
+        assertNotSame(list, registry.lookup(f0));
+    }
+
+    @Test
+    public void testConcurrentLookupBuildsTemplateOnce() throws Exception {
+        final TemplateRegistry registry = new TemplateRegistry(null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Template<?>>> futures = new ArrayList<Future<Template<?>>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<Template<?>>() {
+                    public Template<?> call() throws Exception {
+                        registry.lookup(ReferenceCycleTypeFieldsClass.class);
+                        return registry.lookup(PrimitiveTypeFieldsClass.class);
+                    }
+                }));
+            }
+            Template<?> expected = registry.lookup(PrimitiveTypeFieldsClass.class);
+            for (Future<Template<?>> f : futures) {
+                assertSame(expected, f.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentBuildsAcrossRegistries() throws Exception {
+        // each registry builds its own templates, in parallel with the others
+        final Class<?>[] classes = { PrimitiveTypeFieldsClass.class,
+                ReferenceTypeFieldsClass.class, ListTypeFieldsClass.class,
+                MapTypeFieldsClass.class, ModifiersFieldsClass.class };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        MessagePack msgpack = new MessagePack();
+                        for (Class<?> c : classes) {
+                            Object v = c.newInstance();
+                            Object ret = msgpack.read(msgpack.write(v), c);
+                            assertEquals(v, ret);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        TemplateRegistry registry = new TemplateRegistry(null);
+        Template<?> template = registry.lookup(PrimitiveTypeFieldsClass.class);
+        registry.freeze();
+        assertTrue(registry.isFrozen());
+        assertSame(template, registry.lookup(PrimitiveTypeFieldsClass.class));
+        assertThat(registry.lookup(List.class), is(instanceOf(ListTemplate.class)));
+        try {
+            registry.register(String.class, StringTemplate.getInstance());
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            registry.lookup(ReferenceCycleTypeFieldsClass.class);
+            fail();
+        } catch (MessageTypeException e) {
+        }
+    }
+
+    @Test
+    public void testRegistriesBuildTemplatesIndependently() throws Exception {
+        // registries share the root and the code generation backend
+        TemplateRegistry registry1 = new TemplateRegistry(null);
+        TemplateRegistry registry2 = new TemplateRegistry(null);
+        Template<?> template1 = registry1.lookup(PrimitiveTypeFieldsClass.class);
+        Template<?> template2 = registry2.lookup(PrimitiveTypeFieldsClass.class);
+        assertNotSame(template1, template2);
+        assertSame(registry1.lookup(int.class), registry2.lookup(int.class));
+        registry1.unregister();
+        assertSame(template2, registry2.lookup(PrimitiveTypeFieldsClass.class));
+        assertSame(IntegerTemplate.getInstance(), registry1.lookup(int.class));
+    }
+
+    /**
+     * loads the test classes by itself, like a loader of a module.
+     */
+    static class ModuleClassLoader extends URLClassLoader {
+        ModuleClassLoader() {
+            super(new URL[] { PrimitiveTypeFieldsClass.class.getProtectionDomain()
+                    .getCodeSource().getLocation() }, TestTemplateRegistry.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.startsWith("org.msgpack.testclasses.")) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    @Test
+    public void testTemplateOfModuleClass() throws Exception {
+        ClassLoader loader = new ModuleClassLoader();
+        Class<?> c = loader.loadClass(PrimitiveTypeFieldsClass.class.getName());
+        assertNotSame(PrimitiveTypeFieldsClass.class, c);
+        assertTrue(TemplateRegistry.isUnloadable(c));
+        assertFalse(TemplateRegistry.isUnloadable(PrimitiveTypeFieldsClass.class));
+
+        MessagePack msgpack = new MessagePack();
+        TemplateRegistry registry = new TemplateRegistry(null);
+        Template tmpl = registry.lookup(c);
+        assertSame(tmpl, registry.lookup(c));
+        // defined by the loader of the class, and not kept strongly
+        assertSame(loader, tmpl.getClass().getClassLoader());
+        assertFalse(registry.cache.containsKey(c));
+
+        Object v = c.newInstance();
+        c.getField("f2").set(v, 42);
+        BufferPacker packer = msgpack.createBufferPacker();
+        tmpl.write(packer, v);
+        AnyTemplate any = new AnyTemplate(registry);
+        any.write(packer, v);
+        assertEquals(0, any.getCachedTypeCount());
+        BufferUnpacker unpacker = msgpack.createBufferUnpacker(packer.toByteArray());
+        assertEquals(v, tmpl.read(unpacker, null));
+        assertEquals(v, tmpl.read(unpacker, null));
+
+        // explicitly registered templates are kept
+        registry.register(c, tmpl);
+        assertTrue(registry.cache.containsKey(c));
+    }
 }
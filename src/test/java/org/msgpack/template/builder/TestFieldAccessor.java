@@ -0,0 +1,97 @@
+package org.msgpack.template.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+import org.msgpack.MessageTypeException;
+
+
+public class TestFieldAccessor {
+
+    static class Fields {
+        private boolean f0;
+        private byte f1;
+        private short f2;
+        private int f3;
+        private long f4;
+        private float f5;
+        private double f6;
+        private char f7;
+        private String f8;
+    }
+
+    @Test
+    public void testReflectionFieldAccessor() throws Exception {
+        testFieldAccessor(new AccessorFactory() {
+            public FieldAccessor create(Field f) {
+                return new ReflectionFieldAccessor(f);
+            }
+        });
+    }
+
+    @Test
+    public void testUnsafeFieldAccessor() throws Exception {
+        if (!UnsafeFieldAccessor.isAvailable()) {
+            return;
+        }
+        testFieldAccessor(new AccessorFactory() {
+            public FieldAccessor create(Field f) {
+                return new UnsafeFieldAccessor(f);
+            }
+        });
+    }
+
+    private interface AccessorFactory {
+        FieldAccessor create(Field f);
+    }
+
+    private void testFieldAccessor(AccessorFactory factory) throws Exception {
+        Fields v = new Fields();
+        factory.create(field("f0")).setBoolean(v, true);
+        factory.create(field("f1")).setByte(v, (byte) 1);
+        factory.create(field("f2")).setShort(v, (short) 2);
+        factory.create(field("f3")).setInt(v, 3);
+        factory.create(field("f4")).setLong(v, 4L);
+        factory.create(field("f5")).setFloat(v, 5.0f);
+        factory.create(field("f6")).setDouble(v, 6.0);
+        factory.create(field("f7")).setChar(v, '7');
+        factory.create(field("f8")).set(v, "8");
+        assertEquals(true, v.f0);
+        assertEquals((byte) 1, v.f1);
+        assertEquals((short) 2, v.f2);
+        assertEquals(3, v.f3);
+        assertEquals(4L, v.f4);
+        assertEquals(5.0f, v.f5, 0.0f);
+        assertEquals(6.0, v.f6, 0.0);
+        assertEquals('7', v.f7);
+        assertEquals("8", v.f8);
+
+        assertEquals(true, factory.create(field("f0")).getBoolean(v));
+        assertEquals(3, factory.create(field("f3")).getInt(v));
+        assertEquals(4L, factory.create(field("f4")).getLong(v));
+        assertEquals(6.0, factory.create(field("f6")).getDouble(v), 0.0);
+        assertEquals(3, factory.create(field("f3")).get(v));
+        assertEquals("8", factory.create(field("f8")).get(v));
+
+        factory.create(field("f3")).set(v, 33);
+        assertEquals(33, v.f3);
+
+        try {
+            factory.create(field("f8")).set(v, 8);
+            fail();
+        } catch (MessageTypeException e) {
+        }
+        try {
+            factory.create(field("f3")).getInt("not a Fields");
+            fail();
+        } catch (MessageTypeException e) {
+        }
+    }
+
+    private static Field field(String name) throws Exception {
+        return Fields.class.getDeclaredField(name);
+    }
+}
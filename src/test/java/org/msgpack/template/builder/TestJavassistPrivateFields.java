@@ -0,0 +1,76 @@
+package org.msgpack.template.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.template.Template;
+import org.msgpack.template.TemplateRegistry;
+import org.msgpack.testclasses.ModifiersFieldsClass;
+
+
+public class TestJavassistPrivateFields {
+
+    // the java.lang.reflect.Field objects kept by the generated template
+    private static List<Field> resolvedFields(Template<?> tmpl) throws Exception {
+        List<Field> fields = new ArrayList<Field>();
+        for (Field f : tmpl.getClass().getDeclaredFields()) {
+            if (f.getName().startsWith("_$$_f")) {
+                f.setAccessible(true);
+                fields.add((Field) f.get(tmpl));
+            }
+        }
+        return fields;
+    }
+
+    @Test
+    public void testPrivateFieldsResolvedOnce() throws Exception {
+        TemplateRegistry registry = new TemplateRegistry(null);
+        JavassistTemplateBuilder builder = new JavassistTemplateBuilder(registry);
+        Template<ModifiersFieldsClass> tmpl = builder.buildTemplate(ModifiersFieldsClass.class);
+
+        // resolved by the constructor: f1 and f5 are the private fields
+        List<Field> resolved = resolvedFields(tmpl);
+        Set<String> names = new HashSet<String>();
+        for (Field f : resolved) {
+            assertTrue(f.isAccessible());
+            names.add(f.getName());
+        }
+        assertEquals(2, resolved.size());
+        assertTrue(names.contains("f1"));
+        assertTrue(names.contains("f5"));
+
+        ModifiersFieldsClass v = new ModifiersFieldsClass();
+        Field f1 = ModifiersFieldsClass.class.getDeclaredField("f1");
+        f1.setAccessible(true);
+        f1.setInt(v, 42);
+        v.setF5("private");
+
+        MessagePack msgpack = new MessagePack();
+        for (int i = 0; i < 3; i++) {
+            BufferPacker packer = msgpack.createBufferPacker();
+            tmpl.write(packer, v);
+            ModifiersFieldsClass ret = tmpl.read(
+                    msgpack.createBufferUnpacker(packer.toByteArray()), null);
+            assertEquals(v, ret);
+            assertEquals(42, f1.getInt(ret));
+            assertEquals("private", ret.getF5());
+        }
+
+        // the same Field objects are used by every call
+        List<Field> after = resolvedFields(tmpl);
+        assertEquals(resolved.size(), after.size());
+        for (int i = 0; i < resolved.size(); i++) {
+            assertSame(resolved.get(i), after.get(i));
+        }
+    }
+}
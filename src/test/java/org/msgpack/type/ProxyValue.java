@@ -49,6 +49,11 @@ public abstract class ProxyValue implements Value {
         return getValue().isRawValue();
     }
 
+    @Override
+    public boolean isExtValue() {
+        return getValue().isExtValue();
+    }
+
     @Override
     public NilValue asNilValue() {
         return getValue().asNilValue();
@@ -84,6 +89,11 @@ public abstract class ProxyValue implements Value {
         return getValue().asRawValue();
     }
 
+    @Override
+    public ExtValue asExtValue() {
+        return getValue().asExtValue();
+    }
+
     @Override
     public void writeTo(Packer pk) throws IOException {
         getValue().writeTo(pk);
@@ -2,12 +2,16 @@ package org.msgpack.unpacker;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 import org.msgpack.MessagePack;
+import org.msgpack.MessageTypeException;
+import org.msgpack.template.Template;
+import org.msgpack.template.Templates;
 import org.msgpack.type.Value;
 import org.msgpack.type.ValueFactory;
 import org.msgpack.packer.BufferPacker;
@@ -92,6 +96,114 @@ public class TestBufferUnpacker {
         }
     }
 
+    @Test
+    public void testWrapThenFeed() throws Exception {
+        List<Value> vs = new ArrayList<Value>();
+
+        BufferPacker pk = new MessagePack().createBufferPacker();
+        for (int i = 0; i < 3; i++) {
+            Value v = createComplexType();
+            vs.add(v);
+            pk.write(v);
+        }
+        byte[] raw = pk.toByteArray();
+
+        // the wrapped array ends in the middle of the second value
+        int half = raw.length / 2;
+        BufferUnpacker u = new MessagePack().createBufferUnpacker();
+        u.wrap(raw, 0, half);
+        UnpackerIterator it = u.iterator();
+        assertTrue(it.hasNext());
+        assertEquals(vs.get(0), it.next());
+        assertTrue(!it.hasNext());
+
+        u.feed(raw, half, raw.length - half);
+        int n = 1;
+        while (it.hasNext()) {
+            assertEquals(vs.get(n), it.next());
+            n++;
+        }
+        assertEquals(3, n);
+        assertEquals(raw.length, u.getReadByteCount());
+
+        u.wrap(raw);
+        assertEquals(raw.length, u.getBufferSize());
+        assertEquals(vs.get(0), u.readValue());
+    }
+
+    @Test
+    public void testTryReadValueEachByte() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        List<Value> vs = new ArrayList<Value>();
+        BufferPacker pk = msgpack.createBufferPacker();
+        for (int i = 0; i < 5; i++) {
+            Value v = createComplexType();
+            vs.add(v);
+            pk.write(v);
+        }
+        byte[] raw = pk.toByteArray();
+
+        int n = 0;
+        BufferUnpacker u = msgpack.createBufferUnpacker();
+        for (int i = 0; i < raw.length; i++) {
+            u.feed(raw, i, 1);
+            Value v;
+            while ((v = u.tryReadValue()) != null) {
+                assertEquals(vs.get(n), v);
+                n++;
+            }
+        }
+        assertEquals(5, n);
+        assertEquals(null, u.tryReadValue());
+    }
+
+    @Test
+    public void testTryReadTemplate() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            list.add("element" + i);
+        }
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.write(list);
+        pk.write(list);
+        byte[] raw = pk.toByteArray();
+
+        Template<List<String>> tmpl = Templates.tList(Templates.TString);
+        BufferUnpacker u = msgpack.createBufferUnpacker();
+        int n = 0;
+        for (int i = 0; i < raw.length; i += 7) {
+            u.feed(raw, i, Math.min(7, raw.length - i));
+            List<String> l;
+            while ((l = u.tryRead(tmpl)) != null) {
+                assertEquals(list, l);
+                n++;
+            }
+        }
+        assertEquals(2, n);
+    }
+
+    @Test
+    public void testTryReadNil() throws Exception {
+        MessagePack msgpack = new MessagePack();
+        BufferPacker pk = msgpack.createBufferPacker();
+        pk.writeNil();
+        pk.write("next");
+        byte[] raw = pk.toByteArray();
+
+        BufferUnpacker u = msgpack.createBufferUnpacker();
+        assertEquals(null, u.tryRead(Templates.TString));
+        u.feed(raw, 0, 1);
+        try {
+            u.tryRead(Templates.TString);
+            fail();
+        } catch (MessageTypeException expected) {
+        }
+        assertEquals(null, u.tryRead(Templates.TString));
+        u.feed(raw, 1, raw.length - 1);
+        assertEquals("next", u.tryRead(Templates.TString));
+    }
+
     public Value createComplexType() throws Exception {
         Random rand = new Random(System.currentTimeMillis());
         byte[] b0 = new byte[0];
@@ -0,0 +1,203 @@
+package org.msgpack.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.template.Template;
+import org.msgpack.template.TemplateRegistry;
+import org.msgpack.template.builder.AbstractGeneratedTemplate;
+import org.msgpack.template.builder.ReflectionBeansTemplateBuilder;
+import org.msgpack.template.builder.ReflectionTemplateBuilder;
+import org.msgpack.unpacker.BufferUnpacker;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TestTemplateAnnotationProcessor {
+
+    private static final String PACKAGE = "org.msgpack.util.processed";
+
+    private File dir;
+
+    private ClassLoader loader;
+
+    private static class Source extends SimpleJavaFileObject {
+        private String code;
+
+        Source(String name, String code) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension),
+                    Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+
+        dir = File.createTempFile("msgpack", "processor");
+        dir.delete();
+        dir.mkdirs();
+
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+        sources.add(new Source(PACKAGE + ".Base",
+                "package " + PACKAGE + ";\n"
+                + "public class Base {\n"
+                + "    public long id;\n"
+                + "    protected String label;\n"
+                + "}\n"));
+        sources.add(new Source(PACKAGE + ".Fields",
+                "package " + PACKAGE + ";\n"
+                + "@org.msgpack.annotation.Message\n"
+                + "public class Fields extends Base {\n"
+                + "    public int i;\n"
+                + "    public char c;\n"
+                + "    double d;\n"
+                + "    private int p = 7;\n"
+                + "    @org.msgpack.annotation.Optional public String s;\n"
+                + "    public java.util.List<String> list;\n"
+                + "    public Props props;\n"
+                + "    public static int ignored;\n"
+                + "    public transient int skipped;\n"
+                + "    public int getP() { return p; }\n"
+                + "    public void setP(int p) { this.p = p; }\n"
+                + "}\n"));
+        sources.add(new Source(PACKAGE + ".Props",
+                "package " + PACKAGE + ";\n"
+                + "@org.msgpack.annotation.Beans\n"
+                + "public class Props {\n"
+                + "    private boolean on;\n"
+                + "    private String name;\n"
+                + "    public boolean isOn() { return on; }\n"
+                + "    public void setOn(boolean on) { this.on = on; }\n"
+                + "    public String getName() { return name; }\n"
+                + "    public void setName(String name) { this.name = name; }\n"
+                + "}\n"));
+        sources.add(new Source(PACKAGE + ".Unsupported",
+                "package " + PACKAGE + ";\n"
+                + "@org.msgpack.annotation.Message\n"
+                + "public class Unsupported {\n"
+                + "    public int i;\n"
+                + "    private Unsupported() {}\n"
+                + "}\n"));
+
+        StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+        try {
+            List<String> options = Arrays.asList(
+                    "-d", dir.getPath(),
+                    "-s", dir.getPath(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", TemplateAnnotationProcessor.class.getName());
+            assertTrue(compiler.getTask(null, fm, null, options, null, sources).call());
+        } finally {
+            fm.close();
+        }
+        loader = new URLClassLoader(new URL[] { dir.toURI().toURL() },
+                getClass().getClassLoader());
+    }
+
+    @After
+    public void tearDown() {
+        if (dir != null) {
+            delete(dir);
+        }
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    private Class<?> load(String name) throws Exception {
+        return loader.loadClass(PACKAGE + "." + name);
+    }
+
+    private static byte[] write(MessagePack msgpack, Template tmpl, Object v) throws Exception {
+        BufferPacker packer = msgpack.createBufferPacker();
+        tmpl.write(packer, v);
+        return packer.toByteArray();
+    }
+
+    @Test
+    public void testGeneratedTemplate() throws Exception {
+        Class<?> fieldsClass = load("Fields");
+        Class<?> propsClass = load("Props");
+        Object props = propsClass.newInstance();
+        propsClass.getMethod("setOn", boolean.class).invoke(props, true);
+        propsClass.getMethod("setName", String.class).invoke(props, "muga");
+        Object v = fieldsClass.newInstance();
+        fieldsClass.getField("id").set(v, 12345678901L);
+        fieldsClass.getField("i").set(v, -3);
+        fieldsClass.getField("c").set(v, 'x');
+        fieldsClass.getMethod("setP", int.class).invoke(v, 11);
+        fieldsClass.getField("list").set(v, Arrays.asList("a", "b"));
+        fieldsClass.getField("props").set(v, props);
+
+        MessagePack msgpack = new MessagePack();
+        Template tmpl = msgpack.lookup(fieldsClass);
+        assertTrue(tmpl instanceof AbstractGeneratedTemplate);
+        assertEquals(fieldsClass.getName() + "_$$_GeneratedTemplate", tmpl.getClass().getName());
+        assertTrue(msgpack.lookup(propsClass) instanceof AbstractGeneratedTemplate);
+
+        byte[] bytes = write(msgpack, tmpl, v);
+        BufferUnpacker unpacker = msgpack.createBufferUnpacker();
+        unpacker.wrap(bytes);
+        Object ret = tmpl.read(unpacker, null);
+        assertEquals(12345678901L, fieldsClass.getField("id").get(ret));
+        assertEquals(-3, fieldsClass.getField("i").get(ret));
+        assertEquals('x', fieldsClass.getField("c").get(ret));
+        assertEquals(11, fieldsClass.getMethod("getP").invoke(ret));
+        assertEquals(null, fieldsClass.getField("s").get(ret));
+        assertEquals(Arrays.asList("a", "b"), fieldsClass.getField("list").get(ret));
+        Object retProps = fieldsClass.getField("props").get(ret);
+        assertEquals(true, propsClass.getMethod("isOn").invoke(retProps));
+        assertEquals("muga", propsClass.getMethod("getName").invoke(retProps));
+
+        // same wire format as the templates built at runtime
+        TemplateRegistry registry = new TemplateRegistry(null);
+        registry.register(propsClass,
+                new ReflectionBeansTemplateBuilder(registry).buildTemplate(propsClass));
+        Template reflection = new ReflectionTemplateBuilder(registry).buildTemplate(fieldsClass);
+        assertArrayEquals(write(msgpack, reflection, v), bytes);
+    }
+
+    @Test
+    public void testUnsupportedClass() throws Exception {
+        try {
+            load("Unsupported_$$_GeneratedTemplate");
+        } catch (ClassNotFoundException e) {
+            return;
+        }
+        throw new AssertionError("template of a class without constructor is generated");
+    }
+}